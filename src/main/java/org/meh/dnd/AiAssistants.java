@@ -0,0 +1,381 @@
+package org.meh.dnd;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.output.ServiceOutputParser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * One {@link AiDM.Assistant} proxy over one shared model, built once.
+ * <p>
+ * Each call borrows a memory slot and points it at the memory of that call;
+ * the slot itself is the memory id, so the proxy only ever caches as many
+ * memories as there were concurrent calls.
+ * <p>
+ * With a streaming model, {@link #stream} asks for the same structured
+ * responses and reports the leading text field as it is generated, at most
+ * once every {@code narrationInterval}.
+ * <p>
+ * Every call goes through the {@link AiCallGuard}, named after the
+ * {@link AiDM.Assistant} method it stands for. Each attempt works on its own
+ * copy of the memory, so that a hedged one does not interleave with it.
+ */
+public class AiAssistants
+{
+    private static final ServiceOutputParser PARSER = new ServiceOutputParser();
+    private final AiDM.Assistant assistant;
+    private final StreamingChatLanguageModel streamingModel;
+    private final AiCallGuard guard;
+    private final long narrationNanos;
+    private final Queue<Slot> idle = new ConcurrentLinkedQueue<>();
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder firstTokenNanos = new LongAdder();
+    private final LongAccumulator firstTokenMaxNanos = new LongAccumulator(Math::max, 0);
+
+    private static class Slot
+            implements ChatMemory
+    {
+        private volatile ChatMemory memory;
+
+        @Override
+        public Object id() {
+            return this;
+        }
+
+        @Override
+        public void add(dev.langchain4j.data.message.ChatMessage message) {
+            memory.add(message);
+        }
+
+        @Override
+        public List<dev.langchain4j.data.message.ChatMessage> messages() {
+            return memory.messages();
+        }
+
+        @Override
+        public void clear() {
+            memory.clear();
+        }
+    }
+
+    public AiAssistants(
+            ChatLanguageModel model,
+            StreamingChatLanguageModel streamingModel,
+            Duration narrationInterval,
+            AiCallGuard guard
+    ) {
+        this.streamingModel = streamingModel;
+        this.narrationNanos = narrationInterval.toNanos();
+        this.guard = guard;
+        this.assistant = AiServices.builder(AiDM.Assistant.class)
+                .chatLanguageModel(model)
+                .chatMemoryProvider(id -> (Slot) id)
+                .build();
+    }
+
+    public static ChatLanguageModel openAi(
+            String apiKey,
+            Duration timeout,
+            int maxRetries
+    ) {
+        return OpenAiChatModel.builder()
+                .modelName(OpenAiChatModelName.GPT_4_O_MINI)
+                .apiKey(apiKey)
+                .timeout(timeout)
+                .maxRetries(maxRetries)
+                .logRequests(true)
+                .logResponses(true)
+                .build();
+    }
+
+    public static StreamingChatLanguageModel openAiStreaming(
+            String apiKey,
+            Duration timeout
+    ) {
+        return OpenAiStreamingChatModel.builder()
+                .modelName(OpenAiChatModelName.GPT_4_O_MINI)
+                .apiKey(apiKey)
+                .timeout(timeout)
+                .logRequests(true)
+                .logResponses(true)
+                .build();
+    }
+
+    public boolean streaming() {
+        return streamingModel != null;
+    }
+
+    public <T> T call(
+            String method,
+            ChatMemory memory,
+            BiFunction<AiDM.Assistant, Object, T> call
+    ) {
+        return guard.call(method, true, () -> inSlot(copy(memory), call));
+    }
+
+    private <T> T inSlot(
+            ChatMemory memory,
+            BiFunction<AiDM.Assistant, Object, T> call
+    ) {
+        Slot slot = idle.poll();
+        if (slot == null)
+            slot = new Slot();
+        slot.memory = memory;
+        try {
+            return call.apply(assistant, slot);
+        } finally {
+            slot.memory = null;
+            idle.offer(slot);
+        }
+    }
+
+    public String summarize(
+            String summary,
+            List<String> entries,
+            int maxWords
+    ) {
+        List<String> events = new ArrayList<>();
+        if (summary != null)
+            events.add(summary);
+        entries.stream()
+                .filter(Objects::nonNull)
+                .forEach(events::add);
+        return call(
+                "summarizeDiary",
+                MessageWindowChatMemory.withMaxMessages(2),
+                (a, id) -> a.summarizeDiary(id,
+                        events.stream()
+                                .map(e -> "* " + e)
+                                .collect(Collectors.joining("\n")),
+                        maxWords));
+    }
+
+    /**
+     * Sends {@code prompt} after the messages in {@code memory} and hands
+     * {@code narration} the value of {@code field} so far whenever it grows,
+     * no more often than the narration interval. The complete response is
+     * left to the caller.
+     */
+    public <T> T stream(
+            String method,
+            ChatMemory memory,
+            String prompt,
+            Class<T> type,
+            String field,
+            Consumer<String> narration
+    ) {
+        // a stream the guard gave up on must not narrate over what follows
+        AtomicBoolean live = new AtomicBoolean(true);
+        try {
+            return guard.call(method, false, () -> streamOnce(memory, prompt, type, field, text -> {
+                if (live.get())
+                    narration.accept(text);
+            }));
+        } finally {
+            live.set(false);
+        }
+    }
+
+    private <T> T streamOnce(
+            ChatMemory memory,
+            String prompt,
+            Class<T> type,
+            String field,
+            Consumer<String> narration
+    ) {
+        List<dev.langchain4j.data.message.ChatMessage> messages = new ArrayList<>(memory.messages());
+        messages.add(new UserMessage(prompt + "\n" + PARSER.outputFormatInstructions(type)));
+        CompletableFuture<Response<AiMessage>> done = new CompletableFuture<>();
+        long start = System.nanoTime();
+        streamingModel.generate(messages, new StreamingResponseHandler<>()
+        {
+            private final PartialString partial = new PartialString(field);
+            private boolean first = true;
+            private int narrated = 0;
+            private long narratedAt = start - narrationNanos;
+
+            @Override
+            public void onNext(String token) {
+                long now = System.nanoTime();
+                if (first) {
+                    first = false;
+                    streams.increment();
+                    firstTokenNanos.add(now - start);
+                    firstTokenMaxNanos.accumulate(now - start);
+                }
+                String text = partial.feed(token);
+                if (text != null && text.length() > narrated && now - narratedAt >= narrationNanos) {
+                    narrated = text.length();
+                    narratedAt = now;
+                    narration.accept(text);
+                }
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.completeExceptionally(error);
+            }
+        });
+        return type.cast(PARSER.parse(done.join(), type));
+    }
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(guard.metrics());
+        metrics.put("ai.streams", streams.sum());
+        metrics.put("ai.stream.first-token.micros.total", firstTokenNanos.sum() / 1000);
+        metrics.put("ai.stream.first-token.micros.max", firstTokenMaxNanos.get() / 1000);
+        return metrics;
+    }
+
+    private static ChatMemory copy(ChatMemory memory) {
+        List<dev.langchain4j.data.message.ChatMessage> messages = memory.messages();
+        MessageWindowChatMemory copy = MessageWindowChatMemory.withMaxMessages(messages.size() + 2);
+        messages.forEach(copy::add);
+        return copy;
+    }
+
+    /**
+     * The decoded value of string {@code field} in a JSON document that may
+     * be cut anywhere, or null if the value has not started yet.
+     */
+    static String partialString(
+            CharSequence json,
+            String field
+    ) {
+        return new PartialString(field).feed(json);
+    }
+
+    /**
+     * Decodes string {@code field} of a JSON document fed a token at a time,
+     * looking at each character once. What cannot be decoded yet, like an
+     * escape cut in half, is left for the next token.
+     */
+    static class PartialString
+    {
+        private final String key;
+        private final StringBuilder json = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+        private int position = 0;
+        private boolean started = false;
+        private boolean done = false;
+
+        PartialString(String field) {
+            this.key = "\"" + field + "\"";
+        }
+
+        /**
+         * The value so far, or null if it has not started yet.
+         */
+        String feed(CharSequence token) {
+            if (done)
+                return value.toString();
+            json.append(token);
+            if (!started && !start())
+                return null;
+            decode();
+            return value.toString();
+        }
+
+        private boolean start() {
+            int i = json.indexOf(key, position);
+            if (i < 0) {
+                // the key may be cut at the end
+                position = Math.max(position, json.length() - key.length() + 1);
+                return false;
+            }
+            position = i;
+            i += key.length();
+            i = skipWhitespace(i);
+            if (i >= json.length() || json.charAt(i) != ':')
+                return false;
+            i = skipWhitespace(i + 1);
+            if (i >= json.length() || json.charAt(i) != '"')
+                return false;
+            position = i + 1;
+            started = true;
+            return true;
+        }
+
+        private int skipWhitespace(int i) {
+            while (i < json.length() && Character.isWhitespace(json.charAt(i)))
+                i++;
+            return i;
+        }
+
+        private void decode() {
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == '"') {
+                    done = true;
+                    return;
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    position++;
+                    continue;
+                }
+                if (position + 1 >= json.length())
+                    return;
+                char e = json.charAt(position + 1);
+                if (e == 'u') {
+                    if (position + 6 > json.length())
+                        return;
+                    value.append(unicode(json.substring(position + 2, position + 6)));
+                    position += 6;
+                    continue;
+                }
+                value.append(switch (e) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    case 'r' -> '\r';
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    default -> e;
+                });
+                position += 2;
+            }
+        }
+
+        // a malformed escape is not worth failing the whole response over
+        private static char unicode(String hex) {
+            int code = 0;
+            for (int i = 0; i < hex.length(); i++) {
+                int digit = Character.digit(hex.charAt(i), 16);
+                if (digit < 0)
+                    return '\uFFFD';
+                code = code * 16 + digit;
+            }
+            return (char) code;
+        }
+    }
+}
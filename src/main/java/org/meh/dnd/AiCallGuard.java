@@ -0,0 +1,230 @@
+package org.meh.dnd;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how long a model call can hold up a game. Every call has a
+ * deadline per method; a hedgeable call that is slower than the 95th
+ * percentile of its method's recent calls is raced by a second, identical
+ * one. Each method has its own circuit, so that failing background calls
+ * cannot shut out the player's: after {@code failureThreshold} failures in
+ * a row it opens and calls fail fast for {@code openFor}, then a single
+ * trial call decides whether it closes again.
+ * <p>
+ * Calls that time out, fail or are rejected throw
+ * {@link UnavailableException}, so that callers can fall back to other
+ * content.
+ */
+public class AiCallGuard
+{
+    private static final int SAMPLES = 100;
+    private static final int MIN_SAMPLES = 20;
+    private final Executor executor;
+    private final Function<String, Duration> deadlines;
+    private final boolean hedge;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Map<String, Long> deadlineNanos = new ConcurrentHashMap<>();
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder trips = new LongAdder();
+
+    public static class UnavailableException
+            extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(
+                String message,
+                Throwable cause
+        ) {
+            super(message, cause);
+        }
+    }
+
+    private static class Latencies
+    {
+        private final long[] samples = new long[SAMPLES];
+        private int count = 0;
+
+        synchronized void add(long nanos) {
+            samples[count++ % SAMPLES] = nanos;
+        }
+
+        synchronized long p95() {
+            if (count < MIN_SAMPLES)
+                return -1;
+            long[] sorted = Arrays.copyOf(samples, Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+        }
+    }
+
+    private class Breaker
+    {
+        private int consecutiveFailures = 0;
+        private long openUntil = 0;
+        private boolean open = false;
+        private boolean trial = false;
+
+        synchronized boolean admit() {
+            if (!open)
+                return true;
+            if (trial || System.nanoTime() < openUntil)
+                return false;
+            trial = true;
+            return true;
+        }
+
+        synchronized void succeeded() {
+            consecutiveFailures = 0;
+            open = false;
+            trial = false;
+        }
+
+        synchronized void failed() {
+            consecutiveFailures++;
+            if (trial || (!open && consecutiveFailures >= failureThreshold)) {
+                if (!open)
+                    trips.increment();
+                open = true;
+                trial = false;
+                openUntil = System.nanoTime() + openNanos;
+            }
+        }
+
+        synchronized boolean open() {
+            return open;
+        }
+    }
+
+    public AiCallGuard(
+            Executor executor,
+            Function<String, Duration> deadlines,
+            boolean hedge,
+            int failureThreshold,
+            Duration openFor
+    ) {
+        this.executor = executor;
+        this.deadlines = deadlines;
+        this.hedge = hedge;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openFor.toNanos();
+    }
+
+    public <T> T call(
+            String method,
+            boolean hedgeable,
+            Supplier<T> attempt
+    ) {
+        Breaker breaker = breakers.computeIfAbsent(method, m -> new Breaker());
+        if (!breaker.admit()) {
+            rejected.increment();
+            throw new UnavailableException(method + " rejected, circuit open", null);
+        }
+        calls.increment();
+        long start = System.nanoTime();
+        long deadline = start + deadlineNanos.computeIfAbsent(method, m -> deadlines.apply(m).toNanos());
+        Latencies stats = latencies.computeIfAbsent(method, m -> new Latencies());
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(attempt, executor);
+        CompletableFuture<T> second = null;
+        try {
+            T result;
+            long hedgeAfter = hedge && hedgeable ? stats.p95() : -1;
+            if (hedgeAfter < 0 || start + hedgeAfter >= deadline) {
+                result = first.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } else {
+                try {
+                    result = first.get(hedgeAfter, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    hedges.increment();
+                    second = CompletableFuture.supplyAsync(attempt, executor);
+                    result = firstSuccess(first, second)
+                            .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (!first.isDone() || first.isCompletedExceptionally())
+                        hedgeWins.increment();
+                }
+            }
+            stats.add(System.nanoTime() - start);
+            breaker.succeeded();
+            return result;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            breaker.failed();
+            throw new UnavailableException(method + " timed out", e);
+        } catch (ExecutionException e) {
+            failures.increment();
+            breaker.failed();
+            Throwable cause = e.getCause() instanceof CompletionException c ? c.getCause() : e.getCause();
+            throw new UnavailableException(method + " failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.failed();
+            throw new UnavailableException(method + " interrupted", e);
+        } finally {
+            first.cancel(false);
+            if (second != null)
+                second.cancel(false);
+        }
+    }
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("ai.calls", calls.sum());
+        metrics.put("ai.failures", failures.sum());
+        metrics.put("ai.timeouts", timeouts.sum());
+        metrics.put("ai.hedges", hedges.sum());
+        metrics.put("ai.hedge.wins", hedgeWins.sum());
+        metrics.put("ai.breaker.rejected", rejected.sum());
+        metrics.put("ai.breaker.open", breakers.values().stream().filter(Breaker::open).count());
+        metrics.put("ai.breaker.trips", trips.sum());
+        latencies.forEach((method, stats) ->
+                metrics.put("ai." + method + ".p95.micros", Math.max(stats.p95(), 0) / 1000));
+        return metrics;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccess(
+            CompletableFuture<T> a,
+            CompletableFuture<T> b
+    ) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        a.whenComplete((value, error) -> {
+            if (error == null)
+                result.complete(value);
+            else
+                b.whenComplete((ignored, other) -> {
+                    if (other != null)
+                        result.completeExceptionally(error);
+                });
+        });
+        b.whenComplete((value, error) -> {
+            if (error == null)
+                result.complete(value);
+            else
+                a.whenComplete((ignored, other) -> {
+                    if (other != null)
+                        result.completeExceptionally(error);
+                });
+        });
+        return result;
+    }
+}
@@ -1,16 +1,20 @@
 package org.meh.dnd;
 
-import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.SystemMessage;
-import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModelName;
-import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.V;
+import org.jboss.logging.Logger;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.meh.dnd.Quests.*;
@@ -18,18 +22,23 @@ import static org.meh.dnd.AiEntities.*;
 
 public record AiDM(
         PlayerChannel playerChannel,
-        GameRepository gameRepository
+        GameRepository gameRepository,
+        AiAssistants assistants,
+        ExploreCache exploreCache,
+        Prefetcher prefetcher,
+        DiaryCompactor diary,
+        DialogueMemories dialogues
 ) implements DM {
-    private static final String OPENAI_API_KEY = System.getenv("OPENAI_API_KEY");
-
+    private final static Logger LOG = Logger.getLogger(AiDM.class);
     @Override
     public void process(
+            String gameId,
             Actions action
     ) {
-        Game game = gameRepository.game().orElseThrow();
+        Game game = gameRepository.game(gameId).orElseThrow();
         if (action instanceof Start start) {
-            QuestStartModel startModel =
-                    assistant(game).startQuest(start.place());
+            QuestStartModel startModel = assistants.call("startQuest",
+                    gameMemory(gameId, game), (a, id) -> a.startQuest(id, start.place()));
 
             List<QuestGoal> quest = startModel.questGoals().stream()
                     .map(AiDM::parseGoal)
@@ -40,88 +49,261 @@ public record AiDM(
                     updateQuestFromExploring(quest, start.place());
             ExploreOutput newOutput =
                     output.withChoices(addQuestGoal(output.choices(), newQuest));
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withLastOutput(newOutput)
                     .withStoryLine(newOutput.storyLine())
                     .withQuest(newQuest));
-            playerChannel.post(newOutput);
+            playerChannel.post(gameId, newOutput);
+            speculate(gameId, newOutput);
         }
         if (action instanceof Explore e) {
-            ParsedExploreResponse content = assistant(game).explore(e.place());
+            ParsedExploreResponse content = prefetcher
+                    .<ParsedExploreResponse>take(gameId, promptKey(game, "explore", e.place()))
+                    .orElseGet(() -> orElse(
+                            () -> explore("explore", gameId, game, e.place(), narrateExplore(gameId, game.place())),
+                            () -> quietExplore(e.place())));
 
             ExploreOutput output = parseExploreOutput(content, game.place());
             ExploreOutput newOutput =
                     output.withChoices(addQuestGoal(output.choices(), game.quest()));
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withLastOutput(newOutput)
                     .withStoryLine(newOutput.storyLine()));
-            playerChannel.post(newOutput);
+            playerChannel.post(gameId, newOutput);
+            speculate(gameId, newOutput);
         }
         if (action instanceof Dialogue d) {
-            ParsedDialogueResponse content =
-                    assistant(game).startDialogue(d.target());
+            ParsedDialogueResponse content = prefetcher
+                    .<ParsedDialogueResponse>take(gameId, promptKey(game, "dialogue", d.target()))
+                    .orElseGet(() -> orElse(
+                            () -> startDialogue("startDialogue", gameId, game, d.target(), narrateDialogue(gameId)),
+                            () -> silentNpc(d.target())));
             DialogueOutput output =
                     parseDialogueOutput(game, content);
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withChat(new ChatWith(d.target(), List.of(new ChatMessage(ChatRole.DM, d.target(), output.phrase()))))
                     .withLastOutput(output)
             );
-            playerChannel.post(output);
+            playerChannel.post(gameId, output);
         }
         if (action instanceof Say s) {
             ChatWith chat =
                     (ChatWith) game.chat();
 
-            MessageWindowChatMemory memory =
-                    memoryFromChat(game.playerChar(), chat, s.what());
-
-            Assistant assistant = AiServices.builder(Assistant.class)
-                    .chatLanguageModel(createModel())
-                    .chatMemory(memory)
-                    .build();
+            ChatMemory memory = dialogues.memory(gameId,
+                    systemMessage(gameId, game), game.playerChar(), chat, s.what());
 
             Somebody npc = (Somebody) game.dialogueTarget();
-            ParsedDialogueResponse content =
-                    assistant.answerDialogue(npc.who());
+            ParsedDialogueResponse content = orElse(
+                    () -> ask("answerDialogue",
+                            memory, (a, id) -> a.answerDialogue(id, npc.who()),
+                            Assistant.ANSWER_DIALOGUE.replace("{npcName}", npc.who()),
+                            ParsedDialogueResponse.class, "phrase", narrateDialogue(gameId)),
+                    () -> silentNpc(npc.who()));
 
             DialogueOutput output =
                     parseDialogueOutput(game, content);
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withChat(chat.add(
                             new ChatMessage(ChatRole.PLAYER, game.playerChar().name(), s.what()),
                             new ChatMessage(ChatRole.DM, chat.target(), output.phrase())))
             );
-            playerChannel.post(output);
+            playerChannel.post(gameId, output);
         }
         if (action instanceof EndDialogue ed) {
             ChatWith chat =
                     (ChatWith) game.chat();
-            MessageWindowChatMemory memory =
-                    memoryFromChat(game.playerChar(), chat, ed.phrase());
+            ChatMemory memory = dialogues.memory(gameId,
+                    systemMessage(gameId, game), game.playerChar(), chat, ed.phrase());
+            dialogues.end(gameId, chat.target());
 
-            Assistant assistant = AiServices.builder(Assistant.class)
-                    .chatLanguageModel(createModel())
-                    .chatMemory(memory)
-                    .build();
-            ParsedExploreResponse content = assistant.explore(game.place());
+            ParsedExploreResponse content = orElse(
+                    () -> ask("explore",
+                            memory, (a, id) -> a.explore(id, game.place()),
+                            Assistant.EXPLORE.replace("{place}", game.place()),
+                            ParsedExploreResponse.class, "description", narrateExplore(gameId, game.place())),
+                    () -> quietExplore(game.place()));
 
             ExploreOutput output = parseExploreOutput(content, game.place());
-            List<QuestGoal> newGoals = new ArrayList<>(game.quest());
-            newGoals.add(ed.goal());
+            List<QuestGoal> newGoals = PersistentVector.from(game.quest()).plus(ed.goal());
             ExploreOutput newOutput =
                     output.withChoices(addQuestGoal(output.choices(), newGoals));
 
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withChat(new NoChat())
                     .withLastOutput(newOutput)
                     .withStoryLine(newOutput.storyLine())
                     .withQuest(newGoals)
             );
-            playerChannel.post(newOutput);
+            playerChannel.post(gameId, newOutput);
+            speculate(gameId, newOutput);
+        }
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(exploreCache.metrics());
+        metrics.putAll(prefetcher.metrics());
+        metrics.putAll(assistants.metrics());
+        metrics.putAll(diary.metrics());
+        metrics.putAll(dialogues.metrics());
+        return metrics;
+    }
+
+    private ParsedExploreResponse explore(
+            String method,
+            String gameId,
+            Game game,
+            String place,
+            Consumer<String> narration
+    ) {
+        String key = promptKey(game, "explore", place);
+        return exploreCache.get(key).orElseGet(() -> {
+            ParsedExploreResponse response = ask(method,
+                    gameMemory(gameId, game), (a, id) -> a.explore(id, place),
+                    Assistant.EXPLORE.replace("{place}", place),
+                    ParsedExploreResponse.class, "description", narration);
+            exploreCache.put(key, response);
+            return response;
+        });
+    }
+
+    private ParsedDialogueResponse startDialogue(
+            String method,
+            String gameId,
+            Game game,
+            String npcName,
+            Consumer<String> narration
+    ) {
+        return ask(method,
+                gameMemory(gameId, game), (a, id) -> a.startDialogue(id, npcName),
+                Assistant.START_DIALOGUE.replace("{npcName}", npcName),
+                ParsedDialogueResponse.class, "phrase", narration);
+    }
+
+    // Streams the narrative field of the response to the player when there
+    // is someone to narrate to, and the model can stream
+    private <T> T ask(
+            String method,
+            ChatMemory memory,
+            BiFunction<Assistant, Object, T> call,
+            String prompt,
+            Class<T> type,
+            String field,
+            Consumer<String> narration
+    ) {
+        if (narration == null || !assistants.streaming())
+            return assistants.call(method, memory, call);
+        return assistants.stream(method, memory, prompt, type, field, narration);
+    }
+
+    private static <T> T orElse(
+            Supplier<T> call,
+            Supplier<T> fallback
+    ) {
+        try {
+            return call.get();
+        } catch (AiCallGuard.UnavailableException e) {
+            LOG.warnf(e, "falling back to canned content");
+            return fallback.get();
         }
     }
 
-    private Assistant assistant(Game g) {
+    // Canned content for when the model cannot answer, which leaves the
+    // player a way to try again
+    private static ParsedExploreResponse quietExplore(String place) {
+        return new ParsedExploreResponse(
+                "You stop to get your bearings, but nothing seems to happen around " + place + ".",
+                List.of(),
+                List.of(new Place(place)),
+                null);
+    }
+
+    private static ParsedDialogueResponse silentNpc(String npcName) {
+        return new ParsedDialogueResponse(
+                npcName + " seems lost in thought and does not answer.",
+                List.of(new DialogueActionModel(
+                        DialogueActionType.SAY, new SayModel("Are you all right?"), null)));
+    }
+
+    private Consumer<String> narrateExplore(
+            String gameId,
+            String place
+    ) {
+        return text -> playerChannel.post(gameId,
+                new ExploreOutput(place, text, List.of(), null));
+    }
+
+    private Consumer<String> narrateDialogue(String gameId) {
+        return text -> playerChannel.post(gameId,
+                new DialogueOutput(text, List.of()));
+    }
+
+    // The player is likelier to follow their quest, so those choices go
+    // first. Each response is generated from the game as the player's
+    // choice will leave it, so that it matches the key taken later.
+    // Speculative calls are named apart, so that their failures do not
+    // open the circuit of the player's calls.
+    private void speculate(
+            String gameId,
+            ExploreOutput output
+    ) {
+        Game game = gameRepository.game(gameId).orElseThrow();
+        List<Prefetcher.Speculation> speculations = output.choices().stream()
+                .sorted(Comparator.comparing(c -> !matchesQuestGoal(c, game.quest())))
+                .<Prefetcher.Speculation>mapMulti((choice, next) -> {
+                    switch (choice) {
+                        case Explore e -> {
+                            Game after = game.withQuest(
+                                    updateQuestFromExploring(game.quest(), e.place()));
+                            next.accept(new Prefetcher.Speculation(
+                                    promptKey(after, "explore", e.place()),
+                                    () -> explore("prefetch.explore", gameId, after, e.place(), null)));
+                        }
+                        case Dialogue d -> {
+                            Game after = game.withQuest(
+                                    updateQuestFromTalking(game.quest(), d.target()));
+                            next.accept(new Prefetcher.Speculation(
+                                    promptKey(after, "dialogue", d.target()),
+                                    () -> startDialogue("prefetch.startDialogue", gameId, after, d.target(), null)));
+                        }
+                        default -> {}
+                    }
+                })
+                .toList();
+        prefetcher.speculate(gameId, speculations);
+    }
+
+    private static String promptKey(
+            Game g,
+            String kind,
+            String target
+    ) {
+        List<String> inputs = new ArrayList<>();
+        inputs.add(kind);
+        inputs.add(target);
+        inputs.add(g.playerChar().name());
+        inputs.add(g.background());
+        g.quest().forEach(qg -> inputs.add(describeGoal(qg)));
+        inputs.add("");
+        inputs.addAll(g.diary());
+        return ExploreCache.fingerprint(inputs);
+    }
+
+    private MessageWindowChatMemory gameMemory(
+            String gameId,
+            Game g
+    ) {
+        MessageWindowChatMemory memory =
+                MessageWindowChatMemory.withMaxMessages(10);
+        memory.add(systemMessage(gameId, g));
+        return memory;
+    }
+
+    private SystemMessage systemMessage(
+            String gameId,
+            Game g
+    ) {
         String systemPrompt = String.format("""
                 You are a Dungeons and Dragons master. You have to tell the
                 player what's happening, and I'm going to tell you what the
@@ -148,52 +330,18 @@ public record AiDM(
                         .map(qg -> "* " + describeGoal(qg))
                         .collect(Collectors.joining("\n")));
 
-        String diaryPrompt = g.diary().isEmpty()
+        List<String> diaryLines = diary.lines(gameId, g.diary());
+        String diaryPrompt = diaryLines.isEmpty()
                 ? ""
                 : String.format("""
                 
                 This is a list of noteworthy events happened so far:
                 %s
-                """, g.diary().stream()
+                """, diaryLines.stream()
                 .map(e -> "* " + e)
                 .collect(Collectors.joining("\n")));
 
-        MessageWindowChatMemory memory =
-                MessageWindowChatMemory.withMaxMessages(10);
-
-        memory.add(new SystemMessage(
-                systemPrompt + questPrompt + diaryPrompt));
-
-        return AiServices.builder(Assistant.class)
-                .chatLanguageModel(createModel())
-                .chatMemory(memory)
-                .build();
-    }
-
-    private ChatLanguageModel createModel() {
-        return new OpenAiChatModel.OpenAiChatModelBuilder()
-                .modelName(OpenAiChatModelName.GPT_4_O_MINI)
-                .apiKey(OPENAI_API_KEY)
-                .logRequests(true)
-                .logResponses(true)
-                .build();
-    }
-
-    private static MessageWindowChatMemory memoryFromChat(
-            GameChar playerChar,
-            ChatWith chat,
-            String lastUserMessage
-    ) {
-        MessageWindowChatMemory memory =
-                MessageWindowChatMemory.withMaxMessages(100);
-        chat.messages().forEach(m -> memory.add(
-                switch (m.role()) {
-                    case DM -> new AiMessage(m.speaker() + ": " + m.message());
-                    case PLAYER -> new UserMessage(m.speaker() + ": " + m.message());
-                }
-        ));
-        memory.add(new UserMessage(playerChar.name() + ": " + lastUserMessage));
-        return memory;
+        return new SystemMessage(systemPrompt + questPrompt + diaryPrompt);
     }
 
     static ExploreOutput parseExploreOutput(
@@ -318,9 +466,11 @@ public record AiDM(
         relevant enough in the context of the character's story,
         add a storyline at the end (max 10 words).
         """)
-        QuestStartModel startQuest(String place);
+        QuestStartModel startQuest(
+                @MemoryId Object memoryId,
+                @V("place") String place);
 
-        @dev.langchain4j.service.UserMessage("""
+        String EXPLORE = """
         The character is currently exploring {place}, what happens?
         
         Your response must consist of a description,
@@ -328,10 +478,14 @@ public record AiDM(
         a list of places to explore. Finally, if you deem the description
         relevant enough in the context of the character's story,
         add a storyline at the end (max 10 words).
-        """)
-        ParsedExploreResponse explore(String place);
+        """;
 
-        @dev.langchain4j.service.UserMessage("""
+        @dev.langchain4j.service.UserMessage(EXPLORE)
+        ParsedExploreResponse explore(
+                @MemoryId Object memoryId,
+                @V("place") String place);
+
+        String START_DIALOGUE = """
         The character wants to speak to NPC '{npcName}'.
         
         Provide a phrase that the NPC '{npcName}' says to start off the dialogue.
@@ -347,10 +501,14 @@ public record AiDM(
         The end-dialogue goal must allow the character to reach one of their
         current goals, either directly or indirectly. Do not specify goals that
         are already part of the quest's current goals.
-        """)
-        ParsedDialogueResponse startDialogue(String npcName);
+        """;
 
-        @dev.langchain4j.service.UserMessage("""
+        @dev.langchain4j.service.UserMessage(START_DIALOGUE)
+        ParsedDialogueResponse startDialogue(
+                @MemoryId Object memoryId,
+                @V("npcName") String npcName);
+
+        String ANSWER_DIALOGUE = """
         Provide a phrase as the answer from NPC '{npcName}'.
         
         Also, provide a list of answers for the character to choose from.
@@ -364,7 +522,25 @@ public record AiDM(
         The end-dialogue goal must allow the character to reach one of their
         current goals, either directly or indirectly. Do not specify goals that
         are already part of the quest's current goals.
+        """;
+
+        @dev.langchain4j.service.UserMessage(ANSWER_DIALOGUE)
+        ParsedDialogueResponse answerDialogue(
+                @MemoryId Object memoryId,
+                @V("npcName") String npcName);
+
+        @dev.langchain4j.service.UserMessage("""
+        These are noteworthy events that happened to the character so far:
+        
+        {events}
+        
+        Summarize them in at most {maxWords} words. Keep the names of
+        characters and places, and anything that may matter later on in
+        their story.
         """)
-        ParsedDialogueResponse answerDialogue(String npcName);
+        String summarizeDiary(
+                @MemoryId Object memoryId,
+                @V("events") String events,
+                @V("maxWords") int maxWords);
     }
 }
@@ -1,9 +1,17 @@
 package org.meh.dnd;
 
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public interface Channel<T>
 {
-    void subscribe(Consumer<T> consumer);
-    void post(T message);
+    Subscription subscribe(BiConsumer<String, T> consumer);
+    Subscription subscribe(String gameId, Consumer<T> consumer);
+    void post(String gameId, T message);
+    int subscribers();
+
+    default Map<String, Long> metrics() {
+        return Map.of("subscribers", (long) subscribers());
+    }
 }
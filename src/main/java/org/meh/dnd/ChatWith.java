@@ -1,6 +1,5 @@
 package org.meh.dnd;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -12,8 +11,6 @@ public record ChatWith(
     public ChatWith add(
             ChatMessage... newOnes
     ) {
-        List<ChatMessage> newMessages = new ArrayList<>(messages);
-        newMessages.addAll(Arrays.asList(newOnes));
-        return new ChatWith(target, newMessages);
+        return new ChatWith(target, PersistentVector.from(messages).plusAll(Arrays.asList(newOnes)));
     }
 }
@@ -1,8 +1,15 @@
 package org.meh.dnd;
 
+import java.util.Map;
+
 public interface DM
 {
     void process(
+            String gameId,
             Actions action
     ) throws Exception;
+
+    default Map<String, Long> metrics() {
+        return Map.of();
+    }
 }
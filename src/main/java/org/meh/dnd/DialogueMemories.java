@@ -0,0 +1,138 @@
+package org.meh.dnd;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Model-side history of the dialogues in progress, one per game and NPC.
+ * Each turn only converts the chat messages added since the previous one,
+ * and the oldest messages are dropped once the history goes over
+ * {@code tokenBudget} tokens.
+ */
+public class DialogueMemories
+{
+    private final int tokenBudget;
+    private final Map<Key, Conversation> conversations;
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+
+    private record Key(String gameId, String npc) {}
+
+    // first tells this dialogue from an earlier one with the same NPC
+    private static class Conversation
+    {
+        final Deque<dev.langchain4j.data.message.ChatMessage> messages = new ArrayDeque<>();
+        ChatMessage first;
+        int synced = 0;
+        int tokens = 0;
+    }
+
+    public DialogueMemories(
+            int tokenBudget,
+            int maxConversations
+    ) {
+        this.tokenBudget = tokenBudget;
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Conversation> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    /**
+     * A memory for one turn: the system message, the dialogue so far and
+     * what the player just said.
+     */
+    public ChatMemory memory(
+            String gameId,
+            SystemMessage system,
+            GameChar playerChar,
+            ChatWith chat,
+            String lastUserMessage
+    ) {
+        Conversation conversation;
+        synchronized (this) {
+            conversation = conversations.computeIfAbsent(
+                    new Key(gameId, chat.target()), k -> new Conversation());
+        }
+        synchronized (conversation) {
+            sync(conversation, chat);
+            MessageWindowChatMemory memory =
+                    MessageWindowChatMemory.withMaxMessages(conversation.messages.size() + 4);
+            memory.add(system);
+            conversation.messages.forEach(memory::add);
+            memory.add(new UserMessage(playerChar.name() + ": " + lastUserMessage));
+            return memory;
+        }
+    }
+
+    public synchronized void end(
+            String gameId,
+            String npc
+    ) {
+        conversations.remove(new Key(gameId, npc));
+    }
+
+    public Map<String, Long> metrics() {
+        long size;
+        synchronized (this) {
+            size = conversations.size();
+        }
+        return Map.of(
+                "dialogue.conversations", size,
+                "dialogue.messages.appended", appended.sum(),
+                "dialogue.messages.dropped", dropped.sum(),
+                "dialogue.restarts", restarts.sum()
+        );
+    }
+
+    private void sync(
+            Conversation conversation,
+            ChatWith chat
+    ) {
+        List<ChatMessage> messages = chat.messages();
+        if (conversation.synced > 0 && (conversation.synced > messages.size() ||
+                !messages.getFirst().equals(conversation.first))) {
+            conversation.messages.clear();
+            conversation.synced = 0;
+            conversation.tokens = 0;
+            restarts.increment();
+        }
+        for (ChatMessage m : messages.subList(conversation.synced, messages.size())) {
+            String text = m.speaker() + ": " + m.message();
+            conversation.messages.addLast(switch (m.role()) {
+                case DM -> new AiMessage(text);
+                case PLAYER -> new UserMessage(text);
+            });
+            conversation.tokens += DiaryCompactor.tokens(text);
+            appended.increment();
+        }
+        if (!messages.isEmpty())
+            conversation.first = messages.getFirst();
+        conversation.synced = messages.size();
+        while (conversation.tokens > tokenBudget && conversation.messages.size() > 1) {
+            conversation.tokens -= DiaryCompactor.tokens(text(conversation.messages.removeFirst()));
+            dropped.increment();
+        }
+    }
+
+    private static String text(dev.langchain4j.data.message.ChatMessage message) {
+        return switch (message) {
+            case AiMessage ai -> ai.text();
+            case UserMessage user -> user.singleText();
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,171 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the diary part of the DM prompt. The last {@code keepRecent}
+ * entries are kept verbatim; once {@code foldEvery} more have piled up, the
+ * older ones are folded into a summary of the game so far, in the
+ * background. Whatever is sent is cut to {@code tokenBudget} tokens,
+ * dropping the oldest entries first.
+ * <p>
+ * Summaries live in memory only: after a restart, or when the diary is
+ * reset, the whole diary is folded again. Null entries, left by turns
+ * without a story line, are ignored throughout.
+ */
+public class DiaryCompactor
+{
+    private final static Logger LOG = Logger.getLogger(DiaryCompactor.class);
+    private final Summarizer summarizer;
+    private final Executor executor;
+    private final int keepRecent;
+    private final int foldEvery;
+    private final int tokenBudget;
+    private final Map<String, Summary> summaries;
+    private final Set<String> folding = ConcurrentHashMap.newKeySet();
+    private final LongAdder folds = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public interface Summarizer
+    {
+        String summarize(String summary, List<String> entries, int maxWords);
+    }
+
+    // lastFolded tells a summary of this diary from one of a diary that
+    // was reset since
+    private record Summary(int folded, String lastFolded, String text) {}
+
+    public DiaryCompactor(
+            Summarizer summarizer,
+            Executor executor,
+            int keepRecent,
+            int foldEvery,
+            int tokenBudget,
+            int maxGames
+    ) {
+        this.summarizer = summarizer;
+        this.executor = executor;
+        this.keepRecent = keepRecent;
+        this.foldEvery = foldEvery;
+        this.tokenBudget = tokenBudget;
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+                return size() > maxGames;
+            }
+        };
+    }
+
+    /**
+     * A rough count, about four characters per token.
+     */
+    static int tokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    public List<String> lines(
+            String gameId,
+            List<String> storyLines
+    ) {
+        // turns without a story line leave a null in the diary
+        List<String> diary = storyLines.stream().anyMatch(Objects::isNull)
+                ? storyLines.stream().filter(Objects::nonNull).toList()
+                : storyLines;
+        Summary summary;
+        synchronized (this) {
+            summary = summaries.get(gameId);
+            if (summary != null && !describes(summary, diary)) {
+                summaries.remove(gameId);
+                summary = null;
+            }
+        }
+        int folded = summary == null ? 0 : summary.folded();
+        if (diary.size() - folded >= keepRecent + foldEvery)
+            fold(gameId, summary, diary);
+
+        List<String> recent = diary.subList(folded, diary.size());
+        List<String> lines = new ArrayList<>();
+        int budget = tokenBudget;
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            String entry = recent.get(i);
+            if (tokens(entry) > budget) {
+                dropped.add(i + 1);
+                break;
+            }
+            budget -= tokens(entry);
+            lines.add(entry);
+        }
+        if (summary != null && budget > 0) {
+            String text = summary.text();
+            lines.add(tokens(text) <= budget ? text : text.substring(0, budget * 4));
+        }
+        return lines.reversed();
+    }
+
+    public Map<String, Long> metrics() {
+        long size;
+        synchronized (this) {
+            size = summaries.size();
+        }
+        return Map.of(
+                "diary.summaries", size,
+                "diary.folds", folds.sum(),
+                "diary.fold.failures", failures.sum(),
+                "diary.dropped", dropped.sum()
+        );
+    }
+
+    private static boolean describes(
+            Summary summary,
+            List<String> diary
+    ) {
+        return summary.folded() <= diary.size() &&
+                diary.get(summary.folded() - 1).equals(summary.lastFolded());
+    }
+
+    private void fold(
+            String gameId,
+            Summary previous,
+            List<String> diary
+    ) {
+        int from = previous == null ? 0 : previous.folded();
+        int upTo = diary.size() - keepRecent;
+        List<String> entries = List.copyOf(diary.subList(from, upTo));
+        if (!folding.add(gameId))
+            return;
+        try {
+            executor.execute(() -> {
+                try {
+                    String text = summarizer.summarize(
+                            previous == null ? null : previous.text(),
+                            entries,
+                            tokenBudget / 3);
+                    synchronized (this) {
+                        summaries.put(gameId, new Summary(upTo, entries.getLast(), text));
+                    }
+                    folds.increment();
+                } catch (Exception e) {
+                    LOG.warnf(e, "cannot summarize the diary of game %s", gameId);
+                    failures.increment();
+                } finally {
+                    folding.remove(gameId);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warnf(e, "cannot schedule the summary of game %s", gameId);
+            failures.increment();
+            folding.remove(gameId);
+        }
+    }
+}
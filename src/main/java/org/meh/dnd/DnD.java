@@ -1,6 +1,5 @@
 package org.meh.dnd;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -20,11 +19,14 @@ public record DnD(
     private static final int MOVE_STEP = 5;
     private static final int WEAPONS_REACH = 5;
 
-    public void doAction(Actions action) {
-        Game game = gameRepository.game().orElseThrow();
+    public void doAction(
+            String gameId,
+            Actions action
+    ) {
+        Game game = gameRepository.game(gameId).orElseThrow();
         switch (action) {
             case Start s -> {
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withPlayerChar(g.playerChar()
                                 .withHp(g.playerChar().maxHp())
                                 .withSpellSlots(DndCombat.spellSlots(
@@ -32,14 +34,14 @@ public record DnD(
                                         g.playerChar().level())))
                         .withDiary(List.of())
                         .withQuest(updateQuestFromExploring(g.quest(), s.place())));
-                dmChannel.post(action);
+                dmChannel.post(gameId, action);
             }
             case Explore e -> {
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withMode(EXPLORING)
                         .withPlace(e.place())
                         .withQuest(updateQuestFromExploring(g.quest(), e.place())));
-                dmChannel.post(action);
+                dmChannel.post(gameId, action);
             }
             case Attack attack -> {
                 Fight fight = combat.generateFight(game.playerChar(), attack);
@@ -51,16 +53,16 @@ public record DnD(
                         List.of(),
                         false, false, fight.distance(),
                         computeActions(game.playerChar(), fight.playerActions(), fight.distance()));
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withMode(COMBAT)
                         .withFightStatus(fight)
                         .withLastOutput(output));
-                playersChannel.post(output);
+                playersChannel.post(gameId, output);
                 if (!fight.playerTurn())
-                    playEnemyCombatTurn();
+                    playEnemyCombatTurn(gameId);
             }
             case Rest ignored -> {
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withPlayerChar(g.playerChar()
                                 .withHp(g.playerChar().maxHp())
                                 .withSpellSlots(DndCombat.spellSlots(
@@ -69,26 +71,26 @@ public record DnD(
                         .withMode(RESTING)
                         .withLastOutput(new RestOutput())
                         .withDialogueTarget(new Nobody()));
-                playersChannel.post(new RestOutput());
+                playersChannel.post(gameId, new RestOutput());
             }
             case Dialogue d -> {
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withMode(DIALOGUE)
                         .withDialogueTarget(new Somebody(d.target(), d.type()))
                         .withQuest(updateQuestFromTalking(g.quest(), d.target()))
                 );
-                dmChannel.post(action);
+                dmChannel.post(gameId, action);
             }
             case Say ignored -> {
-                gameRepository.save(g -> g.withMode(DIALOGUE));
-                dmChannel.post(action);
+                gameRepository.save(gameId, g -> g.withMode(DIALOGUE));
+                dmChannel.post(gameId, action);
             }
             case EndDialogue ignored -> {
-                gameRepository.save(g -> g
+                gameRepository.save(gameId, g -> g
                         .withMode(EXPLORING)
                         .withDialogueTarget(new Nobody())
                 );
-                dmChannel.post(action);
+                dmChannel.post(gameId, action);
             }
         }
     }
@@ -97,10 +99,11 @@ public record DnD(
                                  GameChar attacker, GameChar defender) {}
 
     public void playCombatAction(
+            String gameId,
             CombatActions action,
             boolean bonusAction
     ) {
-        Game game = gameRepository.game().orElseThrow();
+        Game game = gameRepository.game(gameId).orElseThrow();
         Fight fight = (Fight) game.combatStatus();
         if (action instanceof Move move) {
             int newDistance = computeDistance(move, fight);
@@ -111,8 +114,7 @@ public record DnD(
                     dirDescription(move) + opponent.name();
             AvailableActions newPlayerActions =
                     fight.playerActions().subtractSpeed(move.amount());
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.add(description);
+            List<String> newLog = PersistentVector.from(fight.log()).plus(description);
             Fight newFight = new Fight(
                     newPlayerActions.hasActionsLeft(),
                     fight.opponent(),
@@ -124,18 +126,17 @@ public record DnD(
                     fight.xp(),
                     fight.delayedEffects()
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withMode(newFight.opponent().isDead()? EXPLORING : COMBAT)
             );
-            notifyPlayersFight(game, newFight);
+            notifyPlayersFight(gameId, game, newFight);
             if (!newFight.playerTurn())
-                playEnemyCombatTurn();
+                playEnemyCombatTurn(gameId);
         } else if (action instanceof Attacks attack) {
             AttackResult result =
                     combat.computeAttack(attack, game.playerChar(), fight.opponent());
-            List<DelayedEffect> newDelayedEffects = new ArrayList<>(fight.delayedEffects());
-            newDelayedEffects.addAll(switch (result) {
+            List<DelayedEffect> newDelayedEffects = PersistentVector.from(fight.delayedEffects()).plusAll(switch (result) {
                 case Hit hit -> hit.delayedEffects();
                 case Miss ignored -> List.of();
             });
@@ -151,11 +152,10 @@ public record DnD(
                         .subtractAtLevel(sa.spell().level());
                 case WeaponAttack ignored -> game.playerChar().spellSlots();
             };
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.add(description);
             boolean killedEnemy = result.gameChar().isDead();
+            PersistentVector<String> newLog = PersistentVector.from(fight.log()).plus(description);
             if (killedEnemy)
-                newLog.add(String.format("Gained %d xp", fight.xp()));
+                newLog = newLog.plus(String.format("Gained %d xp", fight.xp()));
             GameChar newPlayerChar = game.playerChar()
                     .withSpellSlots(newSlots)
                     .withXp(killedEnemy
@@ -172,15 +172,15 @@ public record DnD(
                     fight.xp(),
                     newDelayedEffects
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withMode(newFight.opponent().isDead()? EXPLORING : COMBAT)
                     .withQuest(updateQuestFromFight(game.quest(), newFight))
                     .withPlayerChar(newPlayerChar)
             );
-            notifyPlayersFight(game, newFight);
+            notifyPlayersFight(gameId, game, newFight);
             if (!newFight.playerTurn())
-                playEnemyCombatTurn();
+                playEnemyCombatTurn(gameId);
         } else if (action instanceof EndTurn) {
             List<DamageWithDescription> damages = fight.delayedEffects().stream()
                     .map(e -> updatePlayerAndOpponent(game, fight, e))
@@ -205,11 +205,11 @@ public record DnD(
                     .filter(e -> e.defender().name().equals(fight.opponent().name()))
                     .mapToInt(DamageWithDescription::damage)
                     .sum();
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.addAll(damages.stream().map(DamageWithDescription::description).toList());
+            PersistentVector<String> newLog = PersistentVector.from(fight.log())
+                    .plusAll(damages.stream().map(DamageWithDescription::description).toList());
             GameChar newOpponent = fight.opponent().damage(opponentCharDamage);
             if (newOpponent.isDead())
-                newLog.add(String.format("Gained %d xp", fight.xp()));
+                newLog = newLog.plus(String.format("Gained %d xp", fight.xp()));
             GameChar newPlayerChar = game.playerChar()
                     .damage(playerCharDamage)
                     .withXp(newOpponent.isDead()
@@ -235,30 +235,33 @@ public record DnD(
                                     e.attack()))
                             .toList()
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withPlayerChar(newPlayerChar));
-            notifyPlayersFight(game, newFight);
-            playEnemyCombatTurn();
+            notifyPlayersFight(gameId, game, newFight);
+            playEnemyCombatTurn(gameId);
         }
     }
 
-    private void playEnemyCombatTurn() {
-        Game game = gameRepository.game().orElseThrow();
+    private void playEnemyCombatTurn(String gameId) {
+        Game game = gameRepository.game(gameId).orElseThrow();
         Fight fight = (Fight) game.combatStatus();
         while (fight.outcome() == IN_PROGRESS &&
                 fight.opponentActions().hasActionsLeft() &&
                 !fight.playerTurn()
         ) {
             GeneratedCombatAction ga = combat.generateAttack(fight);
-            enemyCombatAction(ga);
-            game = gameRepository.game().orElseThrow();
+            enemyCombatAction(gameId, ga);
+            game = gameRepository.game(gameId).orElseThrow();
             fight = (Fight) game.combatStatus();
         }
     }
 
-    private void enemyCombatAction(GeneratedCombatAction ga) {
-        Game game = gameRepository.game().orElseThrow();
+    private void enemyCombatAction(
+            String gameId,
+            GeneratedCombatAction ga
+    ) {
+        Game game = gameRepository.game(gameId).orElseThrow();
         Fight fight = (Fight) game.combatStatus();
         if (ga.action() instanceof Move move) {
             int newDistance = computeDistance(move, fight);
@@ -268,8 +271,7 @@ public record DnD(
                     dirDescription(move) + opponent.name();
             AvailableActions newOpponentActions =
                     fight.opponentActions().subtractSpeed(move.amount());
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.add(description);
+            List<String> newLog = PersistentVector.from(fight.log()).plus(description);
             Fight newFight = new Fight(
                     !newOpponentActions.hasActionsLeft(),
                     fight.opponent(),
@@ -281,16 +283,15 @@ public record DnD(
                     fight.xp(),
                     fight.delayedEffects()
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withMode(newFight.opponent().isDead()? EXPLORING : COMBAT)
             );
-            notifyPlayersFight(game, newFight);
+            notifyPlayersFight(gameId, game, newFight);
         } else if (ga.action() instanceof Attacks attack) {
             AttackResult result =
                     combat.computeAttack(attack, fight.opponent(), game.playerChar());
-            List<DelayedEffect> newDelayedEffects = new ArrayList<>(fight.delayedEffects());
-            newDelayedEffects.addAll(switch (result) {
+            List<DelayedEffect> newDelayedEffects = PersistentVector.from(fight.delayedEffects()).plusAll(switch (result) {
                 case Hit hit -> hit.delayedEffects();
                 case Miss ignored -> List.of();
             });
@@ -300,8 +301,7 @@ public record DnD(
                     result);
             AvailableActions newOpponentActions =
                     fight.opponentActions().subtractAction(ga.bonusAction());
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.add(description);
+            List<String> newLog = PersistentVector.from(fight.log()).plus(description);
             Fight newFight = new Fight(
                     !newOpponentActions.hasActionsLeft(),
                     fight.opponent(),
@@ -313,12 +313,12 @@ public record DnD(
                     fight.xp(),
                     newDelayedEffects
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withPlayerChar(result.gameChar())
                     .withMode(result.gameChar().isDead()? EXPLORING : COMBAT)
             );
-            notifyPlayersFight(game, newFight);
+            notifyPlayersFight(gameId, game, newFight);
         } else if (ga.action() instanceof EndTurn) {
             List<DamageWithDescription> damages = fight.delayedEffects().stream()
                     .map(e -> updatePlayerAndOpponent(game, fight, e))
@@ -343,11 +343,11 @@ public record DnD(
                     .filter(e -> e.defender().name().equals(fight.opponent().name()))
                     .mapToInt(DamageWithDescription::damage)
                     .sum();
-            List<String> newLog = new ArrayList<>(fight.log());
-            newLog.addAll(damages.stream().map(DamageWithDescription::description).toList());
+            PersistentVector<String> newLog = PersistentVector.from(fight.log())
+                    .plusAll(damages.stream().map(DamageWithDescription::description).toList());
             GameChar newOpponent = fight.opponent().damage(opponentCharDamage);
             if (newOpponent.isDead())
-                newLog.add(String.format("Gained %d xp", fight.xp()));
+                newLog = newLog.plus(String.format("Gained %d xp", fight.xp()));
             GameChar newPlayerChar = game.playerChar()
                     .damage(playerCharDamage)
                     .withXp(newOpponent.isDead()
@@ -373,11 +373,11 @@ public record DnD(
                                     e.attack()))
                             .toList()
             );
-            gameRepository.save(g -> g
+            gameRepository.save(gameId, g -> g
                     .withFightStatus(newFight)
                     .withPlayerChar(newPlayerChar)
             );
-            notifyPlayersFight(game, newFight);
+            notifyPlayersFight(gameId, game, newFight);
         }
     }
 
@@ -404,6 +404,7 @@ public record DnD(
     }
 
     private void notifyPlayersFight(
+            String gameId,
             Game game,
             Fight fight
     ) {
@@ -418,8 +419,8 @@ public record DnD(
                 fight.distance(),
                 computeActions(game.playerChar(), fight.playerActions(), fight.distance())
         );
-        gameRepository.save(g -> g.withLastOutput(output));
-        playersChannel.post(output);
+        gameRepository.save(gameId, g -> g.withLastOutput(output));
+        playersChannel.post(gameId, output);
     }
 
     private static String dirDescription(Move m) {
@@ -429,8 +430,8 @@ public record DnD(
         };
     }
 
-    public Optional<PlayerOutput> enter() {
-        return gameRepository.game().map(g -> g.events().getLast());
+    public Optional<PlayerOutput> enter(String gameId) {
+        return gameRepository.game(gameId).map(g -> g.events().getLast());
     }
 
     private List<AvailableAction> computeActions(
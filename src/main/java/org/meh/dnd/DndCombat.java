@@ -28,14 +28,15 @@ public class DndCombat implements Combat
     public static final Spell MAGIC_MISSILE = new Spell("Magic Missile", true, D4, false, 1);
     public static final Spell MELF_ARROW = new Spell("Melf's Magic Arrow", true, D8, false, 2);
 
-    private static final List<Weapon> WEAPONS = List.of(
+    // Binary saves refer to catalog entries by position: only ever append
+    static final List<Weapon> WEAPONS = List.of(
             LONGSWORD,
             GREATAXE,
             UNARMED,
             DAGGER,
             LONGBOW
     );
-    private static final List<Spell> SPELLS = List.of(
+    static final List<Spell> SPELLS = List.of(
             SHOCKING_GRASP,
             FIRE_BOLT,
             MAGIC_MISSILE,
@@ -0,0 +1,248 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static org.meh.dnd.AiEntities.*;
+
+/**
+ * Explore responses keyed by a fingerprint of the prompt that produced them.
+ * Keeps the most recently used {@code capacity} responses in memory and, when
+ * given a directory, the newest {@code diskCapacity} on disk as well, so that
+ * they survive a restart. Responses older than the TTL are never returned.
+ * <p>
+ * The directory is swept on startup and whenever it grows past its capacity:
+ * expired files go first, then the oldest, down to 90% of the capacity so
+ * that sweeps stay rare.
+ */
+public class ExploreCache
+{
+    private final static Logger LOG = Logger.getLogger(ExploreCache.class);
+    private static final String SUFFIX = ".json";
+    private final int capacity;
+    private final long ttlMillis;
+    private final Path dir;
+    private final int diskCapacity;
+    private final AtomicInteger diskFiles = new AtomicInteger();
+    private final Object sweeping = new Object();
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    public record Entry(long storedAt, ParsedExploreResponse response) {}
+
+    public ExploreCache(
+            int capacity,
+            Duration ttl,
+            Path dir,
+            int diskCapacity
+    ) {
+        this(capacity, ttl, dir, diskCapacity, System::currentTimeMillis);
+    }
+
+    ExploreCache(
+            int capacity,
+            Duration ttl,
+            Path dir,
+            int diskCapacity,
+            LongSupplier clock
+    ) {
+        this.capacity = capacity;
+        this.ttlMillis = ttl.toMillis();
+        this.dir = dir;
+        this.diskCapacity = diskCapacity;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= ExploreCache.this.capacity)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+        sweepDisk();
+    }
+
+    /**
+     * Case and whitespace differences in the prompt inputs do not change
+     * the fingerprint.
+     */
+    public static String fingerprint(List<String> inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String input : inputs) {
+                String normalized = input == null ? "" : input
+                        .strip()
+                        .replaceAll("\\s+", " ")
+                        .toLowerCase(Locale.ROOT);
+                digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<ParsedExploreResponse> get(String key) {
+        long now = clock.getAsLong();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && now - entry.storedAt() >= ttlMillis) {
+                entries.remove(key);
+                expired.increment();
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+            return Optional.of(entry.response());
+        }
+        entry = readDisk(key, now);
+        if (entry != null) {
+            diskHits.increment();
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+            return Optional.of(entry.response());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(
+            String key,
+            ParsedExploreResponse response
+    ) {
+        Entry entry = new Entry(clock.getAsLong(), response);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        writeDisk(key, entry);
+    }
+
+    public Map<String, Long> metrics() {
+        long size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return Map.of(
+                "explore.cache.size", size,
+                "explore.cache.hits", hits.sum(),
+                "explore.cache.hits.disk", diskHits.sum(),
+                "explore.cache.misses", misses.sum(),
+                "explore.cache.expired", expired.sum(),
+                "explore.cache.evictions", evictions.sum(),
+                "explore.cache.disk.files", (long) diskFiles.get(),
+                "explore.cache.disk.evictions", diskEvictions.sum()
+        );
+    }
+
+    private Entry readDisk(
+            String key,
+            long now
+    ) {
+        if (dir == null)
+            return null;
+        Path file = dir.resolve(key + SUFFIX);
+        if (!Files.exists(file))
+            return null;
+        try {
+            Entry entry = GameJson.MAPPER.readValue(file.toFile(), Entry.class);
+            if (now - entry.storedAt() < ttlMillis)
+                return entry;
+            expired.increment();
+            if (Files.deleteIfExists(file))
+                diskFiles.decrementAndGet();
+        } catch (IOException e) {
+            LOG.warnf(e, "ignoring unreadable cached response %s", file);
+        }
+        return null;
+    }
+
+    private void writeDisk(
+            String key,
+            Entry entry
+    ) {
+        if (dir == null)
+            return;
+        try {
+            Files.createDirectories(dir);
+            Path file = dir.resolve(key + SUFFIX);
+            boolean added = !Files.exists(file);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            GameJson.MAPPER.writeValue(tmp.toFile(), entry);
+            Files.move(tmp, file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (added && diskFiles.incrementAndGet() > diskCapacity)
+                sweepDisk();
+        } catch (IOException e) {
+            LOG.errorf(e, "cannot cache response %s on disk", key);
+        }
+    }
+
+    // holds its own lock, not the one of the memory tier, while it reads
+    // the whole directory
+    private void sweepDisk() {
+        if (dir == null || !Files.isDirectory(dir))
+            return;
+        synchronized (sweeping) {
+            long now = clock.getAsLong();
+            List<Stored> kept = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    try {
+                        long storedAt = GameJson.MAPPER.readValue(file.toFile(), Entry.class).storedAt();
+                        if (now - storedAt < ttlMillis) {
+                            kept.add(new Stored(file, storedAt));
+                            continue;
+                        }
+                        expired.increment();
+                    } catch (IOException e) {
+                        LOG.warnf(e, "removing unreadable cached response %s", file);
+                    }
+                    Files.deleteIfExists(file);
+                }
+                kept.sort(Comparator.comparingLong(Stored::storedAt));
+                int excess = Math.max(0, kept.size() - (diskCapacity - diskCapacity / 10));
+                for (Stored stored : kept.subList(0, excess)) {
+                    Files.deleteIfExists(stored.file());
+                    diskEvictions.increment();
+                }
+                diskFiles.set(kept.size() - excess);
+            } catch (IOException e) {
+                LOG.errorf(e, "cannot sweep cached responses in %s", dir);
+            }
+        }
+    }
+
+    private record Stored(Path file, long storedAt) {}
+}
@@ -1,8 +1,10 @@
 package org.meh.dnd;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public record Game(
         GameMode mode,
@@ -17,6 +19,10 @@ public record Game(
         List<QuestGoal> quest
 )
 {
+    // Only the latest output is ever shown again, so a game keeps a short
+    // window of recent outputs and each update copies at most that many
+    public static final int RECENT_EVENTS = 8;
+
     public Game withMode(GameMode mode) {
         return new Game(mode, events, playerChar, combatStatus, chat, background, place, dialogueTarget, diary, quest);
     }
@@ -30,7 +36,9 @@ public record Game(
     }
 
     public Game withLastOutput(PlayerOutput lastOutput) {
-        List<PlayerOutput> newEvents = new ArrayList<>(events);
+        int from = Math.max(0, events.size() - RECENT_EVENTS + 1);
+        List<PlayerOutput> newEvents = new ArrayList<>(RECENT_EVENTS);
+        newEvents.addAll(events.subList(from, events.size()));
         newEvents.add(lastOutput);
         return new Game(mode, newEvents, playerChar, combatStatus, chat, background, place, dialogueTarget, diary, quest);
     }
@@ -48,9 +56,7 @@ public record Game(
     }
 
     public Game withStoryLine(String storyLine) {
-        List<String> diary = new ArrayList<>(this.diary);
-        diary.add(storyLine);
-        return new Game(mode, events, playerChar, combatStatus, chat, background, place, dialogueTarget, diary, quest);
+        return new Game(mode, events, playerChar, combatStatus, chat, background, place, dialogueTarget, PersistentVector.from(diary).plus(storyLine), quest);
     }
 
     public Game withDiary(List<String> diary) {
@@ -58,6 +64,18 @@ public record Game(
     }
 
     public Game withQuest(List<QuestGoal> quest) {
-        return new Game(mode, events, playerChar, combatStatus, chat, background, place, dialogueTarget, diary, new ArrayList<>(new LinkedHashSet<>(quest)));
+        return new Game(mode, events, playerChar, combatStatus, chat, background, place, dialogueTarget, diary, distinct(quest));
+    }
+
+    // Quests come back unchanged most of the time, so a quest that is
+    // already a persistent vector is only copied when there is a duplicate
+    // to drop
+    private static <T> List<T> distinct(List<T> list) {
+        Set<T> seen = new HashSet<>();
+        for (T element : list) {
+            if (!seen.add(element))
+                return PersistentVector.from(new LinkedHashSet<>(list));
+        }
+        return list instanceof PersistentVector<T> ? list : List.copyOf(list);
     }
 }
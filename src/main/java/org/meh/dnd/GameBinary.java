@@ -0,0 +1,616 @@
+package org.meh.dnd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link GameSave}: a magic header and a format
+ * version, then varints, length-prefixed UTF-8 strings and enum ordinals.
+ * Weapons and spells from the {@link DndCombat} catalogs are written as their
+ * catalog position, anything else inline. Sealed types are written as a tag
+ * followed by their fields.
+ * <p>
+ * Version 2 appends the recent outputs, the fight, the chat and the dialogue
+ * target to the version 1 layout; version 1 saves still load without them.
+ */
+public class GameBinary
+{
+    private static final byte[] MAGIC = {'D', 'N', 'D', 'B'};
+    private static final int VERSION = 2;
+
+    public static boolean isBinary(byte[] head) {
+        return head.length >= MAGIC.length &&
+                Arrays.equals(head, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    public static int headerLength() {
+        return MAGIC.length;
+    }
+
+    public static void write(
+            GameSave save,
+            OutputStream os
+    ) throws IOException {
+        Out out = new Out(os);
+        os.write(MAGIC);
+        out.varint(VERSION);
+        out.varint(save.mode().ordinal());
+        gameChar(out, save.playerChar());
+        out.string(save.background());
+        out.string(save.place());
+        list(out, save.diary(), Out::string);
+        list(out, save.quest(), (o, goal) -> {
+            o.string(goal.goalType());
+            o.string(goal.type());
+            o.string(goal.target());
+            o.bool(goal.reached());
+        });
+        list(out, save.events(), GameBinary::playerOutput);
+        combatStatus(out, save.combatStatus());
+        chat(out, save.chat());
+        dialogueTarget(out, save.dialogueTarget());
+    }
+
+    public static GameSave read(InputStream is)
+    throws IOException {
+        In in = new In(is);
+        byte[] magic = is.readNBytes(MAGIC.length);
+        if (!isBinary(magic))
+            throw new IOException("not a binary save");
+        int version = in.varint();
+        if (version < 1 || version > VERSION)
+            throw new IOException("unsupported save version " + version);
+        GameMode mode = in.ordinal(GameMode.values());
+        GameChar playerChar = gameChar(in);
+        String background = in.string();
+        String place = in.string();
+        List<String> diary = list(in, In::string);
+        List<QuestGoalSave> quest = list(in, i ->
+                new QuestGoalSave(i.string(), i.string(), i.string(), i.bool()));
+        if (version == 1)
+            return new GameSave(mode, playerChar, background, place, diary, quest,
+                    null, null, null, null);
+        return new GameSave(mode, playerChar, background, place, diary, quest,
+                list(in, GameBinary::playerOutput),
+                combatStatus(in),
+                chat(in),
+                dialogueTarget(in));
+    }
+
+    private static void gameChar(
+            Out out,
+            GameChar c
+    ) throws IOException {
+        out.string(c.name());
+        out.signed(c.level());
+        out.varint(c.charClass().ordinal());
+        out.signed(c.hp());
+        out.signed(c.maxHp());
+        out.signed(c.ac());
+        out.signed(c.xp());
+        out.signed(c.nextXp());
+        Stats s = c.stats();
+        out.signed(s.strength());
+        out.signed(s.dexterity());
+        out.signed(s.constitution());
+        out.signed(s.intelligence());
+        out.signed(s.wisdom());
+        out.signed(s.charisma());
+        list(out, c.weapons(), GameBinary::weapon);
+        list(out, c.spells(), GameBinary::spell);
+        availableActions(out, c.availableActions());
+        SpellSlots ss = c.spellSlots();
+        for (int slots : new int[]{ss.level1(), ss.level2(), ss.level3(),
+                ss.level4(), ss.level5(), ss.level6(), ss.level7(),
+                ss.level8(), ss.level9()})
+            out.signed(slots);
+    }
+
+    private static GameChar gameChar(In in)
+    throws IOException {
+        String name = in.string();
+        int level = in.signed();
+        CharClass charClass = in.ordinal(CharClass.values());
+        int hp = in.signed();
+        int maxHp = in.signed();
+        int ac = in.signed();
+        int xp = in.signed();
+        int nextXp = in.signed();
+        Stats stats = new Stats(in.signed(), in.signed(), in.signed(),
+                in.signed(), in.signed(), in.signed());
+        List<Weapon> weapons = list(in, GameBinary::weapon);
+        List<Spell> spells = list(in, GameBinary::spell);
+        AvailableActions availableActions = availableActions(in);
+        SpellSlots spellSlots = new SpellSlots(in.signed(), in.signed(),
+                in.signed(), in.signed(), in.signed(), in.signed(),
+                in.signed(), in.signed(), in.signed());
+        return new GameChar(name, level, charClass, hp, maxHp, ac, xp, nextXp,
+                stats, weapons, spells, availableActions, spellSlots);
+    }
+
+    private static void weapon(
+            Out out,
+            Weapon w
+    ) throws IOException {
+        int id = DndCombat.WEAPONS.indexOf(w);
+        out.varint(id + 1);
+        if (id < 0) {
+            out.string(w.name());
+            out.bool(w.ranged());
+            out.varint(w.damage().ordinal());
+            out.bool(w.twoHanded());
+            out.bool(w.light());
+        }
+    }
+
+    private static Weapon weapon(In in)
+    throws IOException {
+        int id = in.varint();
+        return id > 0
+                ? DndCombat.WEAPONS.get(id - 1)
+                : new Weapon(in.string(), in.bool(), in.ordinal(Die.values()),
+                        in.bool(), in.bool());
+    }
+
+    private static void spell(
+            Out out,
+            Spell s
+    ) throws IOException {
+        int id = DndCombat.SPELLS.indexOf(s);
+        out.varint(id + 1);
+        if (id < 0) {
+            out.string(s.name());
+            out.bool(s.ranged());
+            out.varint(s.damage().ordinal());
+            out.bool(s.rollsToHit());
+            out.signed(s.level());
+        }
+    }
+
+    private static Spell spell(In in)
+    throws IOException {
+        int id = in.varint();
+        return id > 0
+                ? DndCombat.SPELLS.get(id - 1)
+                : new Spell(in.string(), in.bool(), in.ordinal(Die.values()),
+                        in.bool(), in.signed());
+    }
+
+    private static void availableActions(
+            Out out,
+            AvailableActions a
+    ) throws IOException {
+        out.varint(a.actions());
+        out.varint(a.bonusActions());
+        out.varint(a.remainingSpeed());
+    }
+
+    private static AvailableActions availableActions(In in)
+    throws IOException {
+        return new AvailableActions(in.varint(), in.varint(), in.varint());
+    }
+
+    private static void playerOutput(
+            Out out,
+            PlayerOutput output
+    ) throws IOException {
+        switch (output) {
+            case CombatOutput c -> {
+                out.varint(0);
+                out.bool(c.playerTurn());
+                availableActions(out, c.playerAvailableActions());
+                availableActions(out, c.opponentAvailableActions());
+                gameChar(out, c.opponent());
+                list(out, c.log(), Out::string);
+                out.bool(c.playerWon());
+                out.bool(c.enemyWon());
+                out.signed(c.distance());
+                list(out, c.availableActions(), (o, a) -> {
+                    o.enumValue(a.type());
+                    o.string(a.info());
+                    o.bool(a.bonusAction());
+                });
+            }
+            case DialogueOutput d -> {
+                out.varint(1);
+                out.string(d.phrase());
+                list(out, d.answers(), GameBinary::action);
+            }
+            case ExploreOutput e -> {
+                out.varint(2);
+                out.string(e.place());
+                out.string(e.description());
+                list(out, e.choices(), GameBinary::action);
+                out.string(e.storyLine());
+            }
+            case RestOutput ignored -> out.varint(3);
+        }
+    }
+
+    private static PlayerOutput playerOutput(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> new CombatOutput(
+                    in.bool(),
+                    availableActions(in),
+                    availableActions(in),
+                    gameChar(in),
+                    list(in, In::string),
+                    in.bool(),
+                    in.bool(),
+                    in.signed(),
+                    list(in, i -> new AvailableAction(
+                            i.enumValue(AvailableActionType.values()),
+                            i.string(),
+                            i.bool())));
+            case 1 -> new DialogueOutput(in.string(), list(in, GameBinary::action));
+            case 2 -> new ExploreOutput(in.string(), in.string(),
+                    list(in, GameBinary::action), in.string());
+            case 3 -> new RestOutput();
+            default -> throw new IOException("unknown output");
+        };
+    }
+
+    private static void action(
+            Out out,
+            Actions action
+    ) throws IOException {
+        switch (action) {
+            case Attack a -> {
+                out.varint(0);
+                out.string(a.target());
+                out.enumValue(a.type());
+            }
+            case Dialogue d -> {
+                out.varint(1);
+                out.string(d.target());
+                out.enumValue(d.type());
+            }
+            case Explore e -> {
+                out.varint(2);
+                out.string(e.place());
+            }
+            case Rest ignored -> out.varint(3);
+            case Say s -> {
+                out.varint(4);
+                out.string(s.what());
+            }
+            case EndDialogue e -> {
+                out.varint(5);
+                out.string(e.phrase());
+                questGoal(out, e.goal());
+            }
+            case Start s -> {
+                out.varint(6);
+                out.string(s.place());
+            }
+        }
+    }
+
+    private static Actions action(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> new Attack(in.string(), in.enumValue(NpcType.values()));
+            case 1 -> new Dialogue(in.string(), in.enumValue(NpcType.values()));
+            case 2 -> new Explore(in.string());
+            case 3 -> new Rest();
+            case 4 -> new Say(in.string());
+            case 5 -> new EndDialogue(in.string(), questGoal(in));
+            case 6 -> new Start(in.string());
+            default -> throw new IOException("unknown action");
+        };
+    }
+
+    private static void questGoal(
+            Out out,
+            QuestGoal goal
+    ) throws IOException {
+        switch (goal) {
+            case null -> out.varint(0);
+            case KillGoal k -> {
+                out.varint(1);
+                out.enumValue(k.type());
+                out.string(k.target());
+                out.bool(k.reached());
+            }
+            case ExploreGoal e -> {
+                out.varint(2);
+                out.string(e.target());
+                out.bool(e.reached());
+            }
+            case TalkGoal t -> {
+                out.varint(3);
+                out.enumValue(t.type());
+                out.string(t.target());
+                out.bool(t.reached());
+            }
+        }
+    }
+
+    private static QuestGoal questGoal(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> null;
+            case 1 -> new KillGoal(in.enumValue(NpcType.values()), in.string(), in.bool());
+            case 2 -> new ExploreGoal(in.string(), in.bool());
+            case 3 -> new TalkGoal(in.enumValue(NpcType.values()), in.string(), in.bool());
+            default -> throw new IOException("unknown quest goal");
+        };
+    }
+
+    private static void combatStatus(
+            Out out,
+            CombatStatus status
+    ) throws IOException {
+        switch (status) {
+            case Peace ignored -> out.varint(0);
+            case Fight f -> {
+                out.varint(1);
+                out.bool(f.playerTurn());
+                gameChar(out, f.opponent());
+                list(out, f.log(), Out::string);
+                out.signed(f.distance());
+                out.enumValue(f.outcome());
+                availableActions(out, f.playerActions());
+                availableActions(out, f.opponentActions());
+                out.signed(f.xp());
+                list(out, f.delayedEffects(), GameBinary::delayedEffect);
+            }
+        }
+    }
+
+    private static CombatStatus combatStatus(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> new Peace();
+            case 1 -> new Fight(
+                    in.bool(),
+                    gameChar(in),
+                    list(in, In::string),
+                    in.signed(),
+                    in.enumValue(FightOutcome.values()),
+                    availableActions(in),
+                    availableActions(in),
+                    in.signed(),
+                    list(in, GameBinary::delayedEffect));
+            default -> throw new IOException("unknown combat status");
+        };
+    }
+
+    private static void delayedEffect(
+            Out out,
+            DelayedEffect effect
+    ) throws IOException {
+        out.signed(effect.inTurns());
+        list(out, effect.damageRolls(), (o, roll) -> {
+            o.signed(roll.damage());
+            o.enumValue(roll.die());
+            o.enumValue(roll.stat());
+        });
+        gameChar(out, effect.attacker());
+        gameChar(out, effect.defender());
+        switch (effect.attack()) {
+            case WeaponAttack w -> {
+                out.varint(0);
+                weapon(out, w.weapon());
+            }
+            case SpellAttack s -> {
+                out.varint(1);
+                spell(out, s.spell());
+            }
+        }
+    }
+
+    private static DelayedEffect delayedEffect(In in)
+    throws IOException {
+        return new DelayedEffect(
+                in.signed(),
+                list(in, i -> new DamageRoll(
+                        i.signed(),
+                        i.enumValue(Die.values()),
+                        i.enumValue(Stat.values()))),
+                gameChar(in),
+                gameChar(in),
+                switch (in.varint()) {
+                    case 0 -> new WeaponAttack(weapon(in));
+                    case 1 -> new SpellAttack(spell(in));
+                    default -> throw new IOException("unknown attack");
+                });
+    }
+
+    private static void chat(
+            Out out,
+            Chat chat
+    ) throws IOException {
+        switch (chat) {
+            case NoChat ignored -> out.varint(0);
+            case ChatWith c -> {
+                out.varint(1);
+                out.string(c.target());
+                list(out, c.messages(), (o, m) -> {
+                    o.enumValue(m.role());
+                    o.string(m.speaker());
+                    o.string(m.message());
+                });
+            }
+        }
+    }
+
+    private static Chat chat(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> new NoChat();
+            case 1 -> new ChatWith(in.string(), list(in, i -> new ChatMessage(
+                    i.enumValue(ChatRole.values()),
+                    i.string(),
+                    i.string())));
+            default -> throw new IOException("unknown chat");
+        };
+    }
+
+    private static void dialogueTarget(
+            Out out,
+            DialogueTarget target
+    ) throws IOException {
+        switch (target) {
+            case Nobody ignored -> out.varint(0);
+            case Somebody s -> {
+                out.varint(1);
+                out.string(s.who());
+                out.enumValue(s.type());
+            }
+        }
+    }
+
+    private static DialogueTarget dialogueTarget(In in)
+    throws IOException {
+        return switch (in.varint()) {
+            case 0 -> new Nobody();
+            case 1 -> new Somebody(in.string(), in.enumValue(NpcType.values()));
+            default -> throw new IOException("unknown dialogue target");
+        };
+    }
+
+    private interface ElementWriter<T>
+    {
+        void write(Out out, T element) throws IOException;
+    }
+
+    private interface ElementReader<T>
+    {
+        T read(In in) throws IOException;
+    }
+
+    private static <T> void list(
+            Out out,
+            List<T> list,
+            ElementWriter<T> writer
+    ) throws IOException {
+        out.varint(list.size());
+        for (T element : list)
+            writer.write(out, element);
+    }
+
+    private static <T> List<T> list(
+            In in,
+            ElementReader<T> reader
+    ) throws IOException {
+        int size = in.varint();
+        List<T> list = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++)
+            list.add(reader.read(in));
+        return list;
+    }
+
+    private record Out(OutputStream os)
+    {
+        void varint(int value)
+        throws IOException {
+            while ((value & ~0x7f) != 0) {
+                os.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            os.write(value);
+        }
+
+        void signed(int value)
+        throws IOException {
+            varint((value << 1) ^ (value >> 31));
+        }
+
+        void bool(boolean value)
+        throws IOException {
+            os.write(value ? 1 : 0);
+        }
+
+        // null strings are kept apart from empty ones: length + 1, 0 for null
+        void string(String value)
+        throws IOException {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            os.write(bytes);
+        }
+
+        // same for enums: ordinal + 1, 0 for null
+        void enumValue(Enum<?> value)
+        throws IOException {
+            varint(value == null ? 0 : value.ordinal() + 1);
+        }
+    }
+
+    private record In(InputStream is)
+    {
+        int varint()
+        throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = read();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("malformed varint");
+        }
+
+        int signed()
+        throws IOException {
+            int value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        boolean bool()
+        throws IOException {
+            return read() != 0;
+        }
+
+        String string()
+        throws IOException {
+            int length = varint();
+            if (length == 0)
+                return null;
+            byte[] bytes = is.readNBytes(length - 1);
+            if (bytes.length != length - 1)
+                throw new EOFException();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        <E extends Enum<E>> E enumValue(E[] values)
+        throws IOException {
+            int value = varint();
+            return value == 0 ? null : ordinal(values, value - 1);
+        }
+
+        <E extends Enum<E>> E ordinal(E[] values)
+        throws IOException {
+            return ordinal(values, varint());
+        }
+
+        private static <E extends Enum<E>> E ordinal(
+                E[] values,
+                int ordinal
+        ) throws IOException {
+            if (ordinal < 0 || ordinal >= values.length)
+                throw new IOException("bad ordinal " + ordinal + " for " +
+                        values.getClass().getComponentType().getSimpleName());
+            return values[ordinal];
+        }
+
+        private int read()
+        throws IOException {
+            int b = is.read();
+            if (b < 0)
+                throw new EOFException();
+            return b;
+        }
+    }
+}
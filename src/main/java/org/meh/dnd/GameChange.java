@@ -0,0 +1,101 @@
+package org.meh.dnd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record GameChange(
+        GameMode mode,
+        Integer eventsKept,
+        List<PlayerOutput> eventsAdded,
+        GameChar playerChar,
+        CombatStatus combatStatus,
+        Chat chat,
+        String background,
+        String place,
+        DialogueTarget dialogueTarget,
+        Integer diaryKept,
+        List<String> diaryAdded,
+        List<QuestGoal> quest
+)
+{
+    public static GameChange between(
+            Game before,
+            Game after
+    ) {
+        Integer eventsKept = kept(before.events(), after.events());
+        Integer diaryKept = kept(before.diary(), after.diary());
+        return new GameChange(
+                changed(before.mode(), after.mode()),
+                eventsKept,
+                added(eventsKept, after.events()),
+                changed(before.playerChar(), after.playerChar()),
+                changed(before.combatStatus(), after.combatStatus()),
+                changed(before.chat(), after.chat()),
+                changed(before.background(), after.background()),
+                changed(before.place(), after.place()),
+                changed(before.dialogueTarget(), after.dialogueTarget()),
+                diaryKept,
+                added(diaryKept, after.diary()),
+                changed(before.quest(), after.quest())
+        );
+    }
+
+    public Game applyTo(Game game) {
+        return new Game(
+                mode != null ? mode : game.mode(),
+                apply(game.events(), eventsKept, eventsAdded),
+                playerChar != null ? playerChar : game.playerChar(),
+                combatStatus != null ? combatStatus : game.combatStatus(),
+                chat != null ? chat : game.chat(),
+                background != null ? background : game.background(),
+                place != null ? place : game.place(),
+                dialogueTarget != null ? dialogueTarget : game.dialogueTarget(),
+                apply(game.diary(), diaryKept, diaryAdded),
+                quest != null ? quest : game.quest()
+        );
+    }
+
+    private static <T> T changed(
+            T before,
+            T after
+    ) {
+        return before == after ? null : after;
+    }
+
+    // Lists only ever drop from the front, grow at the end or get replaced,
+    // so a change is described by how many trailing elements survive and
+    // what follows them
+    private static <T> Integer kept(
+            List<T> before,
+            List<T> after
+    ) {
+        if (before == after)
+            return null;
+        if (before.isEmpty())
+            return 0;
+        for (int kept = Math.min(before.size(), after.size()); kept > 0; kept--) {
+            if (after.get(kept - 1) == before.getLast() &&
+                    after.getFirst() == before.get(before.size() - kept))
+                return kept;
+        }
+        return 0;
+    }
+
+    private static <T> List<T> added(
+            Integer kept,
+            List<T> after
+    ) {
+        return kept == null ? null : new ArrayList<>(after.subList(kept, after.size()));
+    }
+
+    private static <T> List<T> apply(
+            List<T> list,
+            Integer kept,
+            List<T> added
+    ) {
+        if (kept == null)
+            return list;
+        List<T> survivors = kept == list.size() ? list : list.subList(list.size() - kept, list.size());
+        return PersistentVector.from(survivors).plusAll(added);
+    }
+}
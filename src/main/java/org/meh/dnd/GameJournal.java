@@ -0,0 +1,323 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps every game on disk as a snapshot plus a journal of the changes
+ * committed after it. The changes of all games share one segmented log;
+ * every {@code snapshotEvery} changes a game is folded into a new snapshot
+ * and its older records are released, so recovery only replays a short
+ * tail and old segments get deleted. Recovery folds whatever tails it finds
+ * as well.
+ */
+public final class GameJournal
+        implements GameStore
+{
+    private final static Logger LOG = Logger.getLogger(GameJournal.class);
+    private final Path dir;
+    private final int snapshotEvery;
+    private final JournalSegments segments;
+    private final Map<String, Tail> tails = new ConcurrentHashMap<>();
+    private final Set<Path> unsyncedSnapshots = ConcurrentHashMap.newKeySet();
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final long recoveryMicros;
+
+    private static final byte CHANGE = 0;
+    private static final byte SNAPSHOT = 1;
+
+    public record Snapshot(long seq, Game game) {}
+    private record Record(long seq, JournalSegments.Location location) {}
+
+    private static class Tail
+    {
+        long version = -1;
+        long seq = 0;
+        Game game = null;
+        final List<Record> records = new ArrayList<>();
+    }
+
+    public GameJournal(
+            Path dir,
+            int snapshotEvery,
+            int segmentBytes
+    ) {
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+        this.segments = new JournalSegments(dir, segmentBytes);
+        long start = System.nanoTime();
+        try {
+            segments.replay(this::index);
+            foldTails();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.recoveryMicros = (System.nanoTime() - start) / 1000;
+    }
+
+    @Override
+    public void changed(
+            String gameId,
+            long version,
+            Game game
+    ) throws IOException {
+        Tail tail = tails.computeIfAbsent(gameId, id -> new Tail());
+        synchronized (tail) {
+            // a newer version already reached the journal and includes this one
+            if (version <= tail.version)
+                return;
+            try {
+                if (tail.game == null || tail.records.size() >= snapshotEvery)
+                    snapshot(gameId, tail, game);
+                else
+                    append(gameId, tail, GameChange.between(tail.game, game));
+            } catch (IOException e) {
+                // the next change of this game starts over from a snapshot
+                tail.game = null;
+                throw e;
+            }
+            tail.version = version;
+            tail.game = game;
+        }
+    }
+
+    @Override
+    public void write(
+            String gameId,
+            long version,
+            Game game
+    ) throws IOException {
+        Tail tail = tails.computeIfAbsent(gameId, id -> new Tail());
+        synchronized (tail) {
+            // a newer version is already journaled, this copy is stale
+            if (version < tail.version)
+                return;
+            snapshot(gameId, tail, game);
+            tail.version = version;
+            tail.game = null;
+        }
+    }
+
+    @Override
+    public Optional<Game> read(String gameId)
+    throws IOException {
+        Tail tail = tails.computeIfAbsent(gameId, id -> new Tail());
+        synchronized (tail) {
+            Path snapshotFile = file(gameId, ".snapshot");
+            if (!Files.exists(snapshotFile)) {
+                if (tail.version < 0 && tail.records.isEmpty())
+                    tails.remove(gameId, tail);
+                return Optional.empty();
+            }
+            Snapshot snapshot = GameJson.MAPPER.readValue(
+                    snapshotFile.toFile(), Snapshot.class);
+            Game game = snapshot.game();
+            for (Record record : tail.records) {
+                if (record.seq() <= snapshot.seq())
+                    continue;
+                ByteBuffer payload = segments.read(record.location());
+                skipHeader(payload);
+                GameChange change = GameJson.MAPPER.readValue(
+                        new BufferInput(payload), GameChange.class);
+                game = change.applyTo(game);
+                replayed.increment();
+            }
+            tail.seq = Math.max(tail.seq, snapshot.seq());
+            tail.game = game;
+            return Optional.of(game);
+        }
+    }
+
+    @Override
+    public void sync()
+    throws IOException {
+        segments.force();
+        for (Path snapshot : unsyncedSnapshots) {
+            unsyncedSnapshots.remove(snapshot);
+            force(snapshot);
+        }
+        force(dir);
+    }
+
+    private static void force(Path path)
+    throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(segments.metrics());
+        metrics.put("journal.appends", appends.sum());
+        metrics.put("journal.snapshots", snapshots.sum());
+        metrics.put("journal.replayed", replayed.sum());
+        metrics.put("journal.recovery.micros", recoveryMicros);
+        return metrics;
+    }
+
+    private void index(
+            JournalSegments.Location location,
+            ByteBuffer payload
+    ) {
+        byte kind = payload.get();
+        byte[] id = new byte[payload.getShort()];
+        payload.get(id);
+        long seq = payload.getLong();
+        Tail tail = tails.computeIfAbsent(
+                new String(id, StandardCharsets.UTF_8), gameId -> new Tail());
+        tail.seq = Math.max(tail.seq, seq);
+        if (kind == SNAPSHOT) {
+            release(tail);
+            segments.release(location);
+        } else {
+            tail.records.add(new Record(seq, location));
+        }
+    }
+
+    // Only games in use get snapshotted as they change, so the tails left
+    // by the previous run are folded now, or a game never loaded again
+    // would keep its segments, and every later one, forever
+    private void foldTails()
+    throws IOException {
+        for (Map.Entry<String, Tail> entry : tails.entrySet()) {
+            String gameId = entry.getKey();
+            Tail tail = entry.getValue();
+            synchronized (tail) {
+                if (tail.records.isEmpty())
+                    continue;
+                Optional<Game> game = read(gameId);
+                if (game.isPresent())
+                    snapshot(gameId, tail, game.get());
+                else
+                    release(tail);
+                tail.game = null;
+            }
+        }
+    }
+
+    private void append(
+            String gameId,
+            Tail tail,
+            GameChange change
+    ) throws IOException {
+        long seq = nextSeq(tail);
+        byte[] json = GameJson.MAPPER.writeValueAsBytes(change);
+        JournalSegments.Location location = segments.append(record(CHANGE, gameId, seq, json));
+        tail.records.add(new Record(seq, location));
+        tail.seq = seq;
+        appends.increment();
+    }
+
+    private void snapshot(
+            String gameId,
+            Tail tail,
+            Game game
+    ) throws IOException {
+        Files.createDirectories(dir);
+        long seq = nextSeq(tail);
+        Path tmp = Files.createTempFile(dir, "snapshot", ".tmp");
+        GameJson.MAPPER.writeValue(tmp.toFile(), new Snapshot(seq, game));
+        Files.move(tmp, file(gameId, ".snapshot"), ATOMIC_MOVE, REPLACE_EXISTING);
+        unsyncedSnapshots.add(file(gameId, ".snapshot"));
+        // the marker tells the next replay that older records are covered
+        segments.release(segments.append(record(SNAPSHOT, gameId, seq, new byte[0])));
+        release(tail);
+        tail.seq = seq;
+        snapshots.increment();
+    }
+
+    private void release(Tail tail) {
+        for (Record record : tail.records)
+            segments.release(record.location());
+        tail.records.clear();
+    }
+
+    private static byte[] record(
+            byte kind,
+            String gameId,
+            long seq,
+            byte[] json
+    ) {
+        byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 2 + id.length + 8 + json.length)
+                .put(kind)
+                .putShort((short) id.length)
+                .put(id)
+                .putLong(seq)
+                .put(json)
+                .array();
+    }
+
+    private static void skipHeader(ByteBuffer payload) {
+        payload.get();
+        int idLength = payload.getShort();
+        payload.position(payload.position() + idLength + 8);
+    }
+
+    // Sequence numbers never go below the wall clock, so a snapshot taken
+    // without knowing what is on disk still supersedes any older journal
+    private static long nextSeq(Tail tail) {
+        return Math.max(tail.seq + 1, System.currentTimeMillis() * 1000);
+    }
+
+    private Path file(
+            String gameId,
+            String extension
+    ) {
+        return dir.resolve(URLEncoder.encode(gameId, StandardCharsets.UTF_8) + extension);
+    }
+
+    private static class BufferInput
+            extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(
+                byte[] bytes,
+                int off,
+                int len
+        ) {
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+    }
+}
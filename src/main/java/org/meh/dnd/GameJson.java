@@ -0,0 +1,78 @@
+package org.meh.dnd;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+public class GameJson
+{
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .addMixIn(PlayerOutput.class, PlayerOutputMixin.class)
+            .addMixIn(Actions.class, ActionsMixin.class)
+            .addMixIn(QuestGoal.class, QuestGoalMixin.class)
+            .addMixIn(CombatStatus.class, CombatStatusMixin.class)
+            .addMixIn(Chat.class, ChatMixin.class)
+            .addMixIn(DialogueTarget.class, DialogueTargetMixin.class)
+            .addMixIn(Attacks.class, AttacksMixin.class)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(CombatOutput.class),
+            @JsonSubTypes.Type(DialogueOutput.class),
+            @JsonSubTypes.Type(ExploreOutput.class),
+            @JsonSubTypes.Type(RestOutput.class)
+    })
+    private interface PlayerOutputMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(Attack.class),
+            @JsonSubTypes.Type(Dialogue.class),
+            @JsonSubTypes.Type(Explore.class),
+            @JsonSubTypes.Type(Rest.class),
+            @JsonSubTypes.Type(Say.class),
+            @JsonSubTypes.Type(EndDialogue.class),
+            @JsonSubTypes.Type(Start.class)
+    })
+    private interface ActionsMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(KillGoal.class),
+            @JsonSubTypes.Type(ExploreGoal.class),
+            @JsonSubTypes.Type(TalkGoal.class)
+    })
+    private interface QuestGoalMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(Peace.class),
+            @JsonSubTypes.Type(Fight.class)
+    })
+    private interface CombatStatusMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(ChatWith.class),
+            @JsonSubTypes.Type(NoChat.class)
+    })
+    private interface ChatMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(Somebody.class),
+            @JsonSubTypes.Type(Nobody.class)
+    })
+    private interface DialogueTargetMixin {}
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "kind")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(WeaponAttack.class),
+            @JsonSubTypes.Type(SpellAttack.class)
+    })
+    private interface AttacksMixin {}
+}
@@ -0,0 +1,154 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks one at a time per game, in submission order, while tasks of
+ * different games run in parallel on the given executor. Each game queues
+ * at most {@code capacity} tasks; what happens beyond that is decided by
+ * the {@link OverflowPolicy}. With {@link OverflowPolicy#LATEST} a game
+ * never has more than one task pending, the newest, so the capacity must
+ * be 1.
+ */
+public class GameMailboxes
+{
+    private final static Logger LOG = Logger.getLogger(GameMailboxes.class);
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final LongAdder depth = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    public GameMailboxes(
+            Executor executor,
+            int capacity,
+            OverflowPolicy policy
+    ) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        if (policy == OverflowPolicy.LATEST && capacity != 1)
+            throw new IllegalArgumentException(
+                    "capacity is always 1 under the LATEST policy: " + capacity);
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public void submit(
+            String gameId,
+            Runnable task
+    ) {
+        // a mailbox that has just been retired refuses the task, and the
+        // next attempt creates a fresh one
+        Mailbox mailbox;
+        do {
+            mailbox = mailboxes.computeIfAbsent(gameId, Mailbox::new);
+        } while (!mailbox.submit(task));
+    }
+
+    public Map<String, Long> metrics() {
+        return Map.of(
+                "queue.mailboxes", (long) mailboxes.size(),
+                "queue.depth", depth.sum(),
+                "queue.dropped", dropped.sum(),
+                "queue.blocked", blocked.sum()
+        );
+    }
+
+    /**
+     * Retires itself once its worker finds it empty, so that only games
+     * with pending tasks hold a mailbox.
+     */
+    private class Mailbox
+            implements Runnable
+    {
+        private final String gameId;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private boolean scheduled = false;
+        private boolean retired = false;
+
+        Mailbox(String gameId) {
+            this.gameId = gameId;
+        }
+
+        synchronized boolean submit(Runnable task) {
+            if (retired)
+                return false;
+            depth.increment();
+            switch (policy) {
+                case BLOCK -> {
+                    if (tasks.size() >= capacity) {
+                        blocked.increment();
+                        try {
+                            while (tasks.size() >= capacity) {
+                                wait();
+                                // drained and retired while this waited
+                                if (retired) {
+                                    depth.decrement();
+                                    return false;
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            depth.decrement();
+                            dropped.increment();
+                            return true;
+                        }
+                    }
+                }
+                case DROP_OLDEST -> {
+                    if (tasks.size() >= capacity) {
+                        tasks.removeFirst();
+                        depth.decrement();
+                        dropped.increment();
+                    }
+                }
+                case LATEST -> {
+                    depth.add(-tasks.size());
+                    dropped.add(tasks.size());
+                    tasks.clear();
+                }
+            }
+            tasks.addLast(task);
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        private synchronized Runnable next() {
+            Runnable task = tasks.pollFirst();
+            if (task == null) {
+                scheduled = false;
+                retired = true;
+                mailboxes.remove(gameId, this);
+            } else {
+                notifyAll();
+            }
+            return task;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = next()) != null) {
+                depth.decrement();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error(e);
+                }
+            }
+        }
+    }
+}
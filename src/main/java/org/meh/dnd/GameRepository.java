@@ -1,11 +1,16 @@
 package org.meh.dnd;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
 public interface GameRepository
 {
-    Optional<Game> game();
-    void save(Game game);
-    void save(Function<Game, Game> mutator);
+    Optional<Game> game(String gameId);
+    void save(String gameId, Game game);
+    void save(String gameId, Function<Game, Game> mutator);
+
+    default Map<String, Long> metrics() {
+        return Map.of();
+    }
 }
@@ -8,7 +8,11 @@ public record GameSave(
         String background,
         String place,
         List<String> diary,
-        List<QuestGoalSave> quest
+        List<QuestGoalSave> quest,
+        List<PlayerOutput> events,
+        CombatStatus combatStatus,
+        Chat chat,
+        DialogueTarget dialogueTarget
 )
 {
 }
@@ -1,16 +1,24 @@
 package org.meh.dnd;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.meh.dnd.GameMode.EXPLORING;
 
 public class GameSaveLoad
 {
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper mapper = GameJson.MAPPER.copy()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
 
     public static String save(Game game)
     throws IOException {
@@ -24,6 +32,40 @@ public class GameSaveLoad
         return load(save);
     }
 
+    public static void save(
+            Game game,
+            OutputStream os
+    ) throws IOException {
+        mapper.writeValue(os, createSaveFrom(game));
+    }
+
+    public static void saveBinary(
+            Game game,
+            OutputStream os
+    ) throws IOException {
+        GameBinary.write(createSaveFrom(game), os);
+    }
+
+    // Accepts JSON or binary saves, either of them possibly gzipped
+    public static Game load(InputStream is)
+    throws IOException {
+        BufferedInputStream in = new BufferedInputStream(is);
+        in.mark(GameBinary.headerLength());
+        byte[] head = in.readNBytes(GameBinary.headerLength());
+        in.reset();
+        if (isGzip(head))
+            return load(new GZIPInputStream(in));
+        if (GameBinary.isBinary(head))
+            return load(GameBinary.read(in));
+        return load(mapper.readValue(in, GameSave.class));
+    }
+
+    private static boolean isGzip(byte[] head) {
+        return head.length >= 2 &&
+                (head[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff) &&
+                (head[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
     public static Game createGameFrom(
             String background,
             String place,
@@ -54,23 +96,41 @@ public class GameSaveLoad
                 game.background(),
                 game.place(),
                 game.diary(),
-                saveQuest(game.quest())
+                saveQuest(game.quest()),
+                game.events(),
+                game.combatStatus(),
+                game.chat(),
+                game.dialogueTarget()
         );
     }
 
     private static Game load(GameSave save) {
+        // saves without a full state resume from a fresh prompt
+        if (save.events() == null || save.events().isEmpty())
+            return new Game(
+                    save.mode(),
+                    List.of(save.quest().isEmpty()
+                            ? new ExploreOutput(save.place(), "Ready.", List.of(new Start(save.place())), "")
+                            : new ExploreOutput(save.place(), "Ready to continue.", List.of(new Explore(save.place())), "")
+                    ),
+                    save.playerChar(),
+                    new Peace(),
+                    new NoChat(),
+                    save.background(),
+                    save.place(),
+                    new Nobody(),
+                    save.diary(),
+                    loadQuest(save.quest())
+            );
         return new Game(
                 save.mode(),
-                List.of(save.quest().isEmpty()
-                        ? new ExploreOutput(save.place(), "Ready.", List.of(new Start(save.place())), "")
-                        : new ExploreOutput(save.place(), "Ready to continue.", List.of(new Explore(save.place())), "")
-                ),
+                save.events(),
                 save.playerChar(),
-                new Peace(),
-                new NoChat(),
+                save.combatStatus(),
+                save.chat(),
                 save.background(),
                 save.place(),
-                new Nobody(),
+                save.dialogueTarget(),
                 save.diary(),
                 loadQuest(save.quest())
         );
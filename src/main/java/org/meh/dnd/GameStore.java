@@ -0,0 +1,19 @@
+package org.meh.dnd;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+public interface GameStore
+{
+    void write(String gameId, long version, Game game) throws IOException;
+    Optional<Game> read(String gameId) throws IOException;
+
+    default void changed(String gameId, long version, Game game) throws IOException {}
+
+    default void sync() throws IOException {}
+
+    default Map<String, Long> metrics() {
+        return Map.of();
+    }
+}
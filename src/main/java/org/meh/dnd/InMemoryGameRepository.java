@@ -1,27 +1,272 @@
 package org.meh.dnd;
 
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 public class InMemoryGameRepository
     implements GameRepository
 {
-    private Game game = null;
+    private final static Logger LOG = Logger.getLogger(InMemoryGameRepository.class);
+    private static final VersionedGame PASSIVATED = new VersionedGame(-1, null);
+
+    private final Map<String, Entry> games = new ConcurrentHashMap<>();
+    private final GameStore coldStore;
+    private final long idleNanos;
+    private final AtomicLong versions = new AtomicLong();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder passivations = new LongAdder();
+    private final LongAdder passivationNanos = new LongAdder();
+    private final LongAccumulator passivationMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder rehydrations = new LongAdder();
+    private final LongAdder rehydrationNanos = new LongAdder();
+    private final LongAccumulator rehydrationMaxNanos = new LongAccumulator(Math::max, 0);
+
+    private record VersionedGame(long version, Game game) {}
+
+    // An entry is put in place before its game is read back from the cold
+    // store, so that the read happens outside the map; get() waits for it
+    private static class Entry
+    {
+        private static final CompletableFuture<Void> READY = CompletableFuture.completedFuture(null);
+        private final AtomicReference<VersionedGame> game;
+        private final CompletableFuture<Void> ready;
+        private volatile long lastAccess = System.nanoTime();
+
+        Entry(VersionedGame game) {
+            this(game, READY);
+        }
+
+        private Entry(
+                VersionedGame game,
+                CompletableFuture<Void> ready
+        ) {
+            this.game = new AtomicReference<>(game);
+            this.ready = ready;
+        }
+
+        static Entry loading() {
+            return new Entry(null, new CompletableFuture<>());
+        }
+
+        void loaded(VersionedGame game) {
+            this.game.set(game);
+            ready.complete(null);
+        }
+
+        boolean isLoading() {
+            return !ready.isDone();
+        }
+
+        VersionedGame get() {
+            ready.join();
+            return game.get();
+        }
+
+        boolean compareAndSet(
+                VersionedGame expected,
+                VersionedGame next
+        ) {
+            return game.compareAndSet(expected, next);
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+    }
+
+    public InMemoryGameRepository() {
+        this(null, Duration.ZERO);
+    }
+
+    public InMemoryGameRepository(
+            GameStore coldStore,
+            Duration idleTime
+    ) {
+        this.coldStore = coldStore;
+        this.idleNanos = idleTime.toNanos();
+    }
 
     @Override
-    public Optional<Game> game() {
-        return Optional.ofNullable(game);
+    public Optional<Game> game(String gameId) {
+        return Optional.ofNullable(entry(gameId))
+                .map(Entry::get)
+                .map(VersionedGame::game);
     }
 
     @Override
-    public void save(Game game) {
-        this.game = game;
+    public void save(
+            String gameId,
+            Game game
+    ) {
+        while (true) {
+            VersionedGame next = new VersionedGame(versions.incrementAndGet(), game);
+            Entry entry = games.putIfAbsent(gameId, new Entry(next));
+            if (entry == null) {
+                committed(gameId, next);
+                return;
+            }
+            VersionedGame current = entry.get();
+            if (current == PASSIVATED) {
+                games.remove(gameId, entry);
+                continue;
+            }
+            if (entry.compareAndSet(current, next)) {
+                entry.touch();
+                committed(gameId, next);
+                return;
+            }
+        }
     }
 
     @Override
     public void save(
+            String gameId,
             Function<Game, Game> mutator
     ) {
-        game().ifPresent(g -> save(mutator.apply(g)));
+        Entry entry = entry(gameId);
+        boolean conflicted = false;
+        while (entry != null) {
+            VersionedGame current = entry.get();
+            if (current == PASSIVATED) {
+                entry = entry(gameId);
+                continue;
+            }
+            VersionedGame next = new VersionedGame(
+                    versions.incrementAndGet(),
+                    mutator.apply(current.game()));
+            if (entry.compareAndSet(current, next)) {
+                committed(gameId, next);
+                break;
+            }
+            retries.increment();
+            conflicted = true;
+        }
+        if (conflicted)
+            conflicts.increment();
+    }
+
+    public void passivateIdle() {
+        if (coldStore == null)
+            return;
+        long now = System.nanoTime();
+        games.forEach((gameId, entry) -> {
+            if (entry.isLoading())
+                return;
+            VersionedGame current = entry.get();
+            if (current == PASSIVATED || now - entry.lastAccess < idleNanos)
+                return;
+            long start = System.nanoTime();
+            try {
+                coldStore.write(gameId, current.version(), current.game());
+            } catch (IOException e) {
+                LOG.errorf(e, "cannot passivate game %s", gameId);
+                return;
+            }
+            if (entry.compareAndSet(current, PASSIVATED)) {
+                games.remove(gameId, entry);
+                record(passivations, passivationNanos, passivationMaxNanos, start);
+            }
+        });
+    }
+
+    private void committed(
+            String gameId,
+            VersionedGame game
+    ) {
+        if (coldStore == null)
+            return;
+        try {
+            coldStore.changed(gameId, game.version(), game.game());
+        } catch (IOException e) {
+            LOG.errorf(e, "cannot store game %s", gameId);
+        }
+    }
+
+    private Entry entry(String gameId) {
+        if (gameId == null)
+            return null;
+        while (true) {
+            Entry entry = games.get(gameId);
+            if (entry == null)
+                entry = rehydrate(gameId);
+            if (entry == null)
+                return null;
+            if (entry.get() != PASSIVATED) {
+                entry.touch();
+                return entry;
+            }
+            games.remove(gameId, entry);
+        }
+    }
+
+    private Entry rehydrate(String gameId) {
+        if (coldStore == null)
+            return null;
+        Entry entry = Entry.loading();
+        Entry existing = games.putIfAbsent(gameId, entry);
+        if (existing != null)
+            return existing;
+        long start = System.nanoTime();
+        // whoever waited on a game that cannot be read sees it passivated,
+        // and tries for themselves
+        VersionedGame loaded = PASSIVATED;
+        try {
+            Optional<Game> game = coldStore.read(gameId);
+            if (game.isEmpty())
+                return null;
+            loaded = new VersionedGame(versions.incrementAndGet(), game.get());
+            record(rehydrations, rehydrationNanos, rehydrationMaxNanos, start);
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            entry.loaded(loaded);
+            if (loaded == PASSIVATED)
+                games.remove(gameId, entry);
+        }
+    }
+
+    private static void record(
+            LongAdder count,
+            LongAdder totalNanos,
+            LongAccumulator maxNanos,
+            long start
+    ) {
+        long elapsed = System.nanoTime() - start;
+        count.increment();
+        totalNanos.add(elapsed);
+        maxNanos.accumulate(elapsed);
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(Map.of(
+                "repository.games", (long) games.size(),
+                "repository.conflicts", conflicts.sum(),
+                "repository.retries", retries.sum(),
+                "repository.passivations", passivations.sum(),
+                "repository.passivation.micros.total", passivationNanos.sum() / 1000,
+                "repository.passivation.micros.max", passivationMaxNanos.get() / 1000,
+                "repository.rehydrations", rehydrations.sum(),
+                "repository.rehydration.micros.total", rehydrationNanos.sum() / 1000,
+                "repository.rehydration.micros.max", rehydrationMaxNanos.get() / 1000
+        ));
+        if (coldStore != null)
+            metrics.putAll(coldStore.metrics());
+        return metrics;
     }
 }
@@ -1,27 +1,58 @@
 package org.meh.dnd;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class InMemoryThreadedChannel<T>
         implements Channel<T>
 {
-    private final ExecutorService executor;
-    private final List<Consumer<T>> consumers = new CopyOnWriteArrayList<>();
+    private final GameMailboxes mailboxes;
+    private final Subscribers<T> subscribers = new Subscribers<>();
 
-    public InMemoryThreadedChannel(ExecutorService executor) {
-        this.executor = executor;
+    public InMemoryThreadedChannel(
+            ExecutorService executor,
+            int capacity,
+            OverflowPolicy policy
+    ) {
+        this.mailboxes = new GameMailboxes(executor, capacity, policy);
     }
 
     @Override
-    public void subscribe(Consumer<T> consumer) {
-        consumers.add(consumer);
+    public Subscription subscribe(BiConsumer<String, T> consumer) {
+        return subscribers.subscribe(consumer);
     }
 
     @Override
-    public void post(T message) {
-        consumers.forEach(c -> executor.submit(() -> c.accept(message)));
+    public Subscription subscribe(
+            String gameId,
+            Consumer<T> consumer
+    ) {
+        return subscribers.subscribe(gameId, consumer);
+    }
+
+    @Override
+    public void post(
+            String gameId,
+            T message
+    ) {
+        List<Consumer<T>> consumers = subscribers.consumers(gameId);
+        if (!consumers.isEmpty())
+            mailboxes.submit(gameId, () -> consumers.forEach(c -> c.accept(message)));
+    }
+
+    @Override
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(mailboxes.metrics());
+        metrics.put("subscribers", (long) subscribers());
+        return metrics;
     }
 }
@@ -6,7 +6,11 @@ public class InMemoryThreadedDMChannel
         extends InMemoryThreadedChannel<Actions>
         implements DMChannel
 {
-    public InMemoryThreadedDMChannel(ExecutorService executor) {
-        super(executor);
+    public InMemoryThreadedDMChannel(
+            ExecutorService executor,
+            int capacity,
+            OverflowPolicy policy
+    ) {
+        super(executor, capacity, policy);
     }
 }
@@ -5,7 +5,11 @@ import java.util.concurrent.ExecutorService;
 public class InMemoryThreadedPlayerChannel
         extends InMemoryThreadedChannel<PlayerOutput>
         implements PlayerChannel {
-    public InMemoryThreadedPlayerChannel(ExecutorService executor) {
-        super(executor);
+    public InMemoryThreadedPlayerChannel(
+            ExecutorService executor,
+            int capacity,
+            OverflowPolicy policy
+    ) {
+        super(executor, capacity, policy);
     }
 }
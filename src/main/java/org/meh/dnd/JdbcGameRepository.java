@@ -0,0 +1,271 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Keeps games in an embedded database, one row per game holding the binary
+ * save plus indexed columns for the player, mode, place and last update.
+ * Saves are acknowledged in memory and written by {@link #flush()} as one
+ * batch of upserts; reads see unflushed saves first.
+ * <p>
+ * The last {@code cacheSize} games read or flushed are kept decoded. This
+ * repository is the only writer of the table, so a cached game stays what
+ * is stored until the game is saved again.
+ */
+public class JdbcGameRepository
+        implements GameRepository
+{
+    private final static Logger LOG = Logger.getLogger(JdbcGameRepository.class);
+    private static final String UPSERT = """
+            MERGE INTO games (id, player_name, mode, place, updated_at, state)
+            KEY (id) VALUES (?, ?, ?, ?, ?, ?)""";
+    private static final String SELECT = "SELECT state FROM games WHERE id = ?";
+    private final BlockingQueue<Connection> pool;
+    private final Map<String, Game> pending = new ConcurrentHashMap<>();
+    private final Map<String, Game> stored;
+    // bumped by every flush before its games leave pending, so that a game
+    // read from the table can be told apart from one flushed meanwhile
+    private final AtomicLong flushed = new AtomicLong();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private long flushes = 0;
+    private long rows = 0;
+    private long maxBatch = 0;
+    private long flushNanos = 0;
+
+    private interface Work<T>
+    {
+        T run(Connection connection) throws SQLException, IOException;
+    }
+
+    public JdbcGameRepository(
+            String url,
+            int poolSize,
+            int cacheSize
+    ) {
+        pool = new ArrayBlockingQueue<>(poolSize);
+        stored = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Game> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                Connection connection = DriverManager.getConnection(url);
+                connection.setAutoCommit(false);
+                pool.add(connection);
+            }
+            withConnection(connection -> {
+                try (Statement s = connection.createStatement()) {
+                    s.execute("""
+                            CREATE TABLE IF NOT EXISTS games (
+                                id VARCHAR PRIMARY KEY,
+                                player_name VARCHAR,
+                                mode VARCHAR,
+                                place VARCHAR,
+                                updated_at TIMESTAMP NOT NULL,
+                                state BLOB NOT NULL
+                            )""");
+                    s.execute("CREATE INDEX IF NOT EXISTS games_player_name ON games (player_name)");
+                    s.execute("CREATE INDEX IF NOT EXISTS games_mode ON games (mode)");
+                    s.execute("CREATE INDEX IF NOT EXISTS games_place ON games (place)");
+                    s.execute("CREATE INDEX IF NOT EXISTS games_updated_at ON games (updated_at)");
+                }
+                connection.commit();
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("cannot open game database " + url, e);
+        }
+    }
+
+    @Override
+    public Optional<Game> game(String gameId) {
+        if (gameId == null)
+            return Optional.empty();
+        Game game = pending.get(gameId);
+        if (game != null)
+            return Optional.of(game);
+        return stored(gameId);
+    }
+
+    @Override
+    public void save(
+            String gameId,
+            Game game
+    ) {
+        pending.put(gameId, game);
+    }
+
+    @Override
+    public void save(
+            String gameId,
+            Function<Game, Game> mutator
+    ) {
+        if (gameId == null)
+            return;
+        // the table is read before locking the entry, and read again in
+        // the rare case that a flush got in between
+        long generation = flushed.get();
+        Game base = pending.containsKey(gameId) ? null : stored(gameId).orElse(null);
+        pending.compute(gameId, (id, current) -> {
+            Game game = current != null ? current
+                    : flushed.get() == generation ? base
+                    : stored(id).orElse(null);
+            return game == null ? null : mutator.apply(game);
+        });
+    }
+
+    public synchronized void flush() {
+        if (pending.isEmpty())
+            return;
+        long start = System.nanoTime();
+        Map<String, Game> batch = new HashMap<>(pending);
+        try {
+            withConnection(connection -> {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                try (PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+                    for (Map.Entry<String, Game> e : batch.entrySet()) {
+                        Game game = e.getValue();
+                        ByteArrayOutputStream state = new ByteArrayOutputStream();
+                        GameSaveLoad.saveBinary(game, state);
+                        upsert.setString(1, e.getKey());
+                        upsert.setString(2, game.playerChar().name());
+                        upsert.setString(3, game.mode().name());
+                        upsert.setString(4, game.place());
+                        upsert.setTimestamp(5, now);
+                        upsert.setBytes(6, state.toByteArray());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                    connection.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                }
+                return null;
+            });
+        } catch (SQLException | RuntimeException e) {
+            // flush runs on a schedule, and must not throw or it never runs
+            // again; the batch stays pending for the next one
+            LOG.error("cannot flush games", e);
+            return;
+        }
+        flushed.incrementAndGet();
+        // saves made while flushing stay pending for the next batch
+        batch.forEach((id, game) -> {
+            stored.put(id, game);
+            pending.remove(id, game);
+        });
+        flushes++;
+        rows += batch.size();
+        maxBatch = Math.max(maxBatch, batch.size());
+        flushNanos += System.nanoTime() - start;
+    }
+
+    public void close() {
+        flush();
+        Connection connection;
+        while ((connection = pool.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOG.error("cannot close game database connection", e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("jdbc.pending", (long) pending.size());
+        metrics.put("jdbc.reads", reads.sum());
+        metrics.put("jdbc.cache.hits", hits.sum());
+        metrics.put("jdbc.cache.size", (long) stored.size());
+        synchronized (this) {
+            metrics.put("jdbc.flushes", flushes);
+            metrics.put("jdbc.rows", rows);
+            metrics.put("jdbc.batch.max", maxBatch);
+            metrics.put("jdbc.flush.micros.total", flushNanos / 1000);
+        }
+        return metrics;
+    }
+
+    private Optional<Game> stored(String gameId) {
+        Game game = stored.get(gameId);
+        if (game != null) {
+            hits.increment();
+            return Optional.of(game);
+        }
+        long generation = flushed.get();
+        Optional<Game> loaded = load(gameId);
+        // a flush since the read may have stored a newer game
+        if (loaded.isPresent() && flushed.get() == generation)
+            stored.putIfAbsent(gameId, loaded.get());
+        return loaded;
+    }
+
+    private Optional<Game> load(String gameId) {
+        reads.increment();
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement select = connection.prepareStatement(SELECT)) {
+                    select.setString(1, gameId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (!rs.next())
+                            return Optional.empty();
+                        try (InputStream state = rs.getBinaryStream(1)) {
+                            return Optional.of(GameSaveLoad.load(state));
+                        }
+                    }
+                } finally {
+                    connection.rollback();
+                }
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("cannot load game " + gameId, e);
+        }
+    }
+
+    private <T> T withConnection(Work<T> work)
+    throws SQLException {
+        Connection connection;
+        try {
+            connection = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted waiting for a connection", e);
+        }
+        try {
+            return work.run(connection);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.add(connection);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only log stored in fixed-size, memory-mapped segment files.
+ * Every record is {@code [length][crc32c][payload]}; a zero length marks the
+ * end of the written part of a segment. Records are handed out as read-only
+ * views of the mapped segments, never copied onto the heap.
+ * <p>
+ * Every record is live until it is released; the oldest segments are deleted
+ * as soon as all of their records have been released.
+ */
+public class JournalSegments
+{
+    private final static Logger LOG = Logger.getLogger(JournalSegments.class);
+    private static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".segment";
+    private final Path dir;
+    private final int segmentBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private boolean replaying = false;
+    private long compacted = 0;
+
+    public record Location(long segment, int offset, int length) {}
+
+    public interface Visitor
+    {
+        void record(Location location, ByteBuffer payload);
+    }
+
+    private static class Segment
+    {
+        final long id;
+        final Path file;
+        final MappedByteBuffer buffer;
+        int position = 0;
+        int live = 0;
+        boolean dirty = false;
+
+        Segment(long id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    public JournalSegments(
+            Path dir,
+            int segmentBytes
+    ) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public synchronized void replay(Visitor visitor)
+    throws IOException {
+        Files.createDirectories(dir);
+        segments.clear();
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing
+                    .filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        replaying = true;
+        try {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                Segment segment = new Segment(id, file, map(file, Files.size(file)));
+                segments.put(id, segment);
+                scan(segment, visitor);
+            }
+        } finally {
+            replaying = false;
+        }
+        compact();
+    }
+
+    public synchronized Location append(byte[] payload)
+    throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        int needed = HEADER_BYTES + payload.length;
+        if (segment == null || segment.buffer.capacity() - segment.position < needed)
+            segment = roll(needed);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int offset = segment.position;
+        segment.buffer.putInt(offset + 4, (int) crc.getValue());
+        segment.buffer.put(offset + HEADER_BYTES, payload);
+        // length goes last, a record is not there until its length is
+        segment.buffer.putInt(offset, payload.length);
+        segment.position += needed;
+        segment.live++;
+        segment.dirty = true;
+        return new Location(segment.id, offset + HEADER_BYTES, payload.length);
+    }
+
+    public synchronized ByteBuffer read(Location location) {
+        Segment segment = segments.get(location.segment());
+        if (segment == null)
+            throw new IllegalStateException("segment " + location.segment() + " was compacted");
+        return segment.buffer.slice(location.offset(), location.length()).asReadOnlyBuffer();
+    }
+
+    public synchronized void release(Location location) {
+        Segment segment = segments.get(location.segment());
+        if (segment == null)
+            return;
+        segment.live--;
+        if (!replaying)
+            compact();
+    }
+
+    public synchronized void force() {
+        for (Segment segment : segments.values()) {
+            if (segment.dirty) {
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        }
+    }
+
+    public synchronized Map<String, Long> metrics() {
+        return Map.of(
+                "journal.segments", (long) segments.size(),
+                "journal.segments.compacted", compacted
+        );
+    }
+
+    private void scan(
+            Segment segment,
+            Visitor visitor
+    ) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (buffer.capacity() - position >= HEADER_BYTES) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - HEADER_BYTES)
+                break;
+            ByteBuffer payload = buffer.slice(position + HEADER_BYTES, length);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOG.warnf("ignoring torn journal tail of segment %s", segment.file);
+                break;
+            }
+            segment.live++;
+            visitor.record(new Location(segment.id, position + HEADER_BYTES, length),
+                    payload.asReadOnlyBuffer());
+            position += HEADER_BYTES + length;
+        }
+        segment.position = position;
+    }
+
+    private Segment roll(int needed)
+    throws IOException {
+        long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path file = dir.resolve(String.format("%020d%s", id, SUFFIX));
+        Segment segment = new Segment(id, file, map(file, Math.max(segmentBytes, needed + HEADER_BYTES)));
+        segments.put(id, segment);
+        compact();
+        return segment;
+    }
+
+    // Only a prefix of segments is ever deleted, so a record can never
+    // outlive an older one it depends on
+    private void compact() {
+        List<Segment> dead = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.live > 0 || segment == segments.lastEntry().getValue())
+                break;
+            dead.add(segment);
+        }
+        for (Segment segment : dead) {
+            try {
+                Files.deleteIfExists(segment.file);
+                segments.remove(segment.id);
+                compacted++;
+            } catch (IOException e) {
+                LOG.errorf(e, "cannot delete journal segment %s", segment.file);
+                return;
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(
+            Path file,
+            long size
+    ) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
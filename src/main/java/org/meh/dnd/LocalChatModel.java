@@ -0,0 +1,265 @@
+package org.meh.dnd;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static org.meh.dnd.AiEntities.*;
+
+/**
+ * Stand-in for a real model, for load tests and offline runs. Responses are
+ * valid for the structure the prompt asks for, and are derived only from
+ * the seed and the messages, so the same conversation always gets the same
+ * answer. How long each call takes and whether it fails are drawn from a
+ * latency profile and an error rate, from a generator of their own that is
+ * seeded as well. {@link #streaming()} answers the same way, a few
+ * characters at a time.
+ */
+public class LocalChatModel
+        implements ChatLanguageModel
+{
+    private static final List<String> PLACES = List.of(
+            "Old Mill", "Misty Marsh", "Sunken Crypt", "Crooked Tower",
+            "Whispering Woods", "Silver Lake", "Broken Bridge", "Goblin Warren");
+    private static final List<String> NAMES = List.of(
+            "Aldric", "Mira", "Thorne", "Grusk", "Elowen", "Borin", "Sable", "Vex");
+    private static final List<String> SIGHTS = List.of(
+            "a cold wind carries the smell of smoke",
+            "crows circle silently overhead",
+            "fresh tracks cross the muddy path",
+            "a distant bell tolls three times",
+            "lanterns flicker behind shuttered windows");
+    private final long seed;
+    private final LatencyProfile latency;
+    private final double errorRate;
+    private final long tokenMillis;
+    private final Random chance;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Milliseconds a call waits before answering.
+     */
+    public sealed interface LatencyProfile
+    {
+        long draw(Random random);
+
+        /**
+         * {@code fixed:<ms>}, {@code lognormal:<median ms>:<sigma>} or
+         * {@code spikes:<probability>:<ms>:<profile>}.
+         */
+        static LatencyProfile parse(String spec) {
+            String[] parts = spec.split(":", 4);
+            return switch (parts[0]) {
+                case "fixed" -> new Fixed(Long.parseLong(parts[1]));
+                case "lognormal" -> new LogNormal(
+                        Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                case "spikes" -> new Spikes(
+                        Double.parseDouble(parts[1]), Long.parseLong(parts[2]), parse(parts[3]));
+                default -> throw new IllegalArgumentException("unknown latency profile " + spec);
+            };
+        }
+    }
+
+    public record Fixed(long millis) implements LatencyProfile
+    {
+        @Override
+        public long draw(Random random) {
+            return millis;
+        }
+    }
+
+    public record LogNormal(long medianMillis, double sigma) implements LatencyProfile
+    {
+        @Override
+        public long draw(Random random) {
+            return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    public record Spikes(double probability, long spikeMillis, LatencyProfile base)
+            implements LatencyProfile
+    {
+        @Override
+        public long draw(Random random) {
+            long millis = base.draw(random);
+            return random.nextDouble() < probability ? millis + spikeMillis : millis;
+        }
+    }
+
+    public LocalChatModel(
+            long seed,
+            LatencyProfile latency,
+            double errorRate,
+            long tokenMillis
+    ) {
+        this.seed = seed;
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.tokenMillis = tokenMillis;
+        this.chance = new Random(seed);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        delay(firstToken());
+        return Response.from(AiMessage.from(answer(messages)));
+    }
+
+    public StreamingChatLanguageModel streaming() {
+        return this::stream;
+    }
+
+    private void stream(
+            List<ChatMessage> messages,
+            StreamingResponseHandler<AiMessage> handler
+    ) {
+        long firstToken;
+        try {
+            firstToken = firstToken();
+        } catch (RuntimeException e) {
+            handler.onError(e);
+            return;
+        }
+        String answer = answer(messages);
+        Thread.ofVirtual().start(() -> {
+            delay(firstToken);
+            for (int i = 0; i < answer.length(); i += 4) {
+                if (i > 0)
+                    delay(tokenMillis);
+                handler.onNext(answer.substring(i, Math.min(answer.length(), i + 4)));
+            }
+            handler.onComplete(Response.from(AiMessage.from(answer)));
+        });
+    }
+
+    public Map<String, Long> metrics() {
+        return Map.of(
+                "local.calls", calls.sum(),
+                "local.failures", failures.sum()
+        );
+    }
+
+    String answer(List<ChatMessage> messages) {
+        Random random = new Random(seed ^ messages.stream()
+                .map(LocalChatModel::text)
+                .toList()
+                .hashCode());
+        String prompt = text(messages.getLast());
+        Object response;
+        if (prompt.contains("\"questGoals\""))
+            response = new QuestStartModel(
+                    IntStream.range(0, 2 + random.nextInt(2))
+                            .mapToObj(i -> questGoal(random))
+                            .toList(),
+                    explore(random));
+        else if (prompt.contains("\"answers\""))
+            response = dialogue(random);
+        else if (prompt.contains("\"npcs\""))
+            response = explore(random);
+        else
+            return "So far, " + pick(random, NAMES) + " travelled to the " +
+                    pick(random, PLACES) + " and " + pick(random, SIGHTS) + ".";
+        try {
+            return GameJson.MAPPER.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized long firstToken() {
+        calls.increment();
+        long millis = latency.draw(chance);
+        if (chance.nextDouble() < errorRate) {
+            failures.increment();
+            throw new IllegalStateException("simulated model failure");
+        }
+        return millis;
+    }
+
+    private static ParsedExploreResponse explore(Random random) {
+        List<NPC> npcs = IntStream.range(0, random.nextInt(3))
+                .mapToObj(i -> new NPC(
+                        pick(random, NAMES),
+                        NpcType.values()[random.nextInt(NpcType.values().length)],
+                        random.nextInt(5) == 0))
+                .toList();
+        List<Place> places = IntStream.range(0, 1 + random.nextInt(3))
+                .mapToObj(i -> new Place(pick(random, PLACES)))
+                .distinct()
+                .toList();
+        return new ParsedExploreResponse(
+                "As you look around, " + pick(random, SIGHTS) + ", and " +
+                        pick(random, SIGHTS) + ".",
+                npcs,
+                places,
+                random.nextBoolean() ? "Reached the " + places.getFirst().name() : null);
+    }
+
+    private static ParsedDialogueResponse dialogue(Random random) {
+        List<DialogueActionModel> answers = new ArrayList<>();
+        answers.add(new DialogueActionModel(DialogueActionType.SAY,
+                new SayModel("Tell me about the " + pick(random, PLACES) + "."), null));
+        answers.add(new DialogueActionModel(DialogueActionType.SAY,
+                new SayModel("Have you seen " + pick(random, NAMES) + "?"), null));
+        QuestGoalModel goal = questGoal(random);
+        answers.add(new DialogueActionModel(DialogueActionType.END_DIALOGUE, null,
+                new EndDialogueModel("Farewell, I have work to do.",
+                        goal.goalType(), goal.killGoal(), goal.exploreGoal(), goal.talkGoal())));
+        return new ParsedDialogueResponse(
+                "Greetings, traveller. They say " + pick(random, SIGHTS) + ".",
+                answers);
+    }
+
+    private static QuestGoalModel questGoal(Random random) {
+        NpcType type = NpcType.values()[random.nextInt(NpcType.values().length)];
+        return switch (GoalType.values()[random.nextInt(GoalType.values().length)]) {
+            case KILL -> new QuestGoalModel(GoalType.KILL,
+                    new KillGoalModel(type, pick(random, NAMES)), null, null);
+            case EXPLORE -> new QuestGoalModel(GoalType.EXPLORE,
+                    null, new ExploreGoalModel(pick(random, PLACES)), null);
+            case TALK -> new QuestGoalModel(GoalType.TALK,
+                    null, null, new TalkGoalModel(type, pick(random, NAMES)));
+        };
+    }
+
+    private static String pick(
+            Random random,
+            List<String> values
+    ) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String text(ChatMessage message) {
+        return switch (message) {
+            case SystemMessage system -> system.text();
+            case UserMessage user -> user.singleText();
+            case AiMessage ai -> ai.text();
+            default -> "";
+        };
+    }
+
+    private static void delay(long millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+    }
+}
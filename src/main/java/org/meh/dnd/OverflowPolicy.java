@@ -0,0 +1,17 @@
+package org.meh.dnd;
+
+/**
+ * What a {@link GameMailboxes} does with a task submitted to a full mailbox.
+ */
+public enum OverflowPolicy
+{
+    /** The submitter waits until there is room. */
+    BLOCK,
+    /** The oldest pending task is dropped to make room. */
+    DROP_OLDEST,
+    /**
+     * Every submission replaces whatever is pending, so the capacity is
+     * always one and cannot be configured.
+     */
+    LATEST
+}
@@ -0,0 +1,160 @@
+package org.meh.dnd;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list that shares structure between versions: elements live in a
+ * 32-way trie plus a tail array, so {@link #plus} and {@link #with} copy at
+ * most one path of the trie instead of the whole list.
+ */
+public final class PersistentVector<T>
+        extends AbstractList<T>
+        implements RandomAccess
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY =
+            new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(
+            int size,
+            int shift,
+            Object[] root,
+            Object[] tail
+    ) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> from(Collection<? extends T> elements) {
+        if (elements instanceof PersistentVector<?> vector)
+            return (PersistentVector<T>) vector;
+        return PersistentVector.<T>empty().plusAll(elements);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        Objects.checkIndex(index, size);
+        return (T) leaf(index)[index & MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public PersistentVector<T> plus(T element) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = path(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    public PersistentVector<T> plusAll(Collection<? extends T> elements) {
+        PersistentVector<T> result = this;
+        for (T element : elements)
+            result = result.plus(element);
+        return result;
+    }
+
+    public PersistentVector<T> with(
+            int index,
+            T element
+    ) {
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, element), tail);
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leaf(int index) {
+        if (index >= tailOffset())
+            return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Object[]) node[(index >>> level) & MASK];
+        return node;
+    }
+
+    private Object[] pushTail(
+            int level,
+            Object[] parent
+    ) {
+        int slot = ((size - 1) >>> level) & MASK;
+        Object[] node = parent.clone();
+        if (level == BITS) {
+            node[slot] = tail;
+        } else {
+            Object[] child = (Object[]) parent[slot];
+            node[slot] = child != null
+                    ? pushTail(level - BITS, child)
+                    : path(level - BITS, tail);
+        }
+        return node;
+    }
+
+    private static Object[] path(
+            int level,
+            Object[] leaf
+    ) {
+        if (level == 0)
+            return leaf;
+        Object[] node = new Object[WIDTH];
+        node[0] = path(level - BITS, leaf);
+        return node;
+    }
+
+    private static Object[] assoc(
+            int level,
+            Object[] parent,
+            int index,
+            Object element
+    ) {
+        Object[] node = parent.clone();
+        if (level == 0) {
+            node[index & MASK] = element;
+        } else {
+            int slot = (index >>> level) & MASK;
+            node[slot] = assoc(level - BITS, (Object[]) parent[slot], index, element);
+        }
+        return node;
+    }
+}
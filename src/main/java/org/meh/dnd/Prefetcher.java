@@ -0,0 +1,141 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Generates responses for the choices a player was just offered, before one
+ * of them is picked. Each game has at most one round of speculations: a new
+ * round, or taking any result, discards the previous one, since the game
+ * state it was computed from has moved on.
+ * <p>
+ * Within a round at most {@code maxConcurrent} calls run at once and at most
+ * {@code maxCalls} are made, in the order given.
+ */
+public class Prefetcher
+{
+    private final static Logger LOG = Logger.getLogger(Prefetcher.class);
+    private final Executor executor;
+    private final int maxConcurrent;
+    private final int maxCalls;
+    private final Map<String, Round> rounds;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    public record Speculation(String key, Supplier<?> call) {}
+
+    private static class Round
+    {
+        final Map<String, CompletableFuture<Object>> results = new HashMap<>();
+        volatile boolean discarded = false;
+    }
+
+    public Prefetcher(
+            Executor executor,
+            int maxConcurrent,
+            int maxCalls,
+            int maxGames
+    ) {
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.maxCalls = maxCalls;
+        this.rounds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Round> eldest) {
+                if (size() <= maxGames)
+                    return false;
+                discard(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public void speculate(
+            String gameId,
+            List<Speculation> speculations
+    ) {
+        Round round = new Round();
+        Semaphore permits = new Semaphore(maxConcurrent);
+        speculations.stream().limit(maxCalls).forEach(s ->
+                round.results.put(s.key(), CompletableFuture.supplyAsync(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        if (round.discarded)
+                            return null;
+                        started.increment();
+                        return s.call().get();
+                    } finally {
+                        permits.release();
+                    }
+                }, executor)));
+        synchronized (this) {
+            Round previous = rounds.put(gameId, round);
+            if (previous != null)
+                discard(previous);
+        }
+    }
+
+    /**
+     * Waits for the speculated response if it is still being generated.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> take(
+            String gameId,
+            String key
+    ) {
+        Round round;
+        synchronized (this) {
+            round = rounds.remove(gameId);
+        }
+        CompletableFuture<Object> result = round == null ? null : round.results.remove(key);
+        if (round != null)
+            discard(round);
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        try {
+            T response = (T) result.join();
+            (response == null ? misses : hits).increment();
+            return Optional.ofNullable(response);
+        } catch (CompletionException e) {
+            LOG.warnf(e.getCause(), "speculation %s of game %s failed", key, gameId);
+            failed.increment();
+            return Optional.empty();
+        }
+    }
+
+    public Map<String, Long> metrics() {
+        long games;
+        synchronized (this) {
+            games = rounds.size();
+        }
+        return Map.of(
+                "prefetch.games", games,
+                "prefetch.started", started.sum(),
+                "prefetch.hits", hits.sum(),
+                "prefetch.misses", misses.sum(),
+                "prefetch.failed", failed.sum(),
+                "prefetch.discarded", discarded.sum()
+        );
+    }
+
+    private void discard(Round round) {
+        round.discarded = true;
+        discarded.add(round.results.size());
+    }
+}
@@ -2,6 +2,7 @@ package org.meh.dnd;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 import static org.meh.dnd.FightOutcome.ENEMY_WON;
 
@@ -14,30 +15,45 @@ public class Quests
         if (f.outcome() == ENEMY_WON)
             return q;
         else
-            return q.stream()
-                    .map(g -> {
-                        if (g instanceof KillGoal kg && targetMatches(f.opponent().name(), g)) {
-                            return new KillGoal(kg.type(), f.opponent().name(), true);
-                        } else {
-                            return g;
-                        }
-                    })
-                    .toList();
+            return update(q, g -> {
+                if (g instanceof KillGoal kg && targetMatches(f.opponent().name(), g)) {
+                    return new KillGoal(kg.type(), f.opponent().name(), true);
+                } else {
+                    return g;
+                }
+            });
     }
 
     public static List<QuestGoal> updateQuestFromTalking(
             List<QuestGoal> q,
             String target
     ) {
-        return q.stream()
-                .map(g -> {
-                    if (g instanceof TalkGoal tg && targetMatches(target, g)) {
-                        return new TalkGoal(tg.type(), tg.target(), true);
-                    } else {
-                        return g;
-                    }
-                })
-                .toList();
+        return update(q, g -> {
+            if (g instanceof TalkGoal tg && targetMatches(target, g)) {
+                return new TalkGoal(tg.type(), tg.target(), true);
+            } else {
+                return g;
+            }
+        });
+    }
+
+    // Most actions touch no goal at all, so the quest is only copied where
+    // a goal actually changes
+    private static List<QuestGoal> update(
+            List<QuestGoal> q,
+            UnaryOperator<QuestGoal> f
+    ) {
+        PersistentVector<QuestGoal> updated = null;
+        for (int i = 0; i < q.size(); i++) {
+            QuestGoal g = q.get(i);
+            QuestGoal newGoal = f.apply(g);
+            if (newGoal != g) {
+                if (updated == null)
+                    updated = PersistentVector.from(q);
+                updated = updated.with(i, newGoal);
+            }
+        }
+        return updated == null ? q : updated;
     }
 
     private static boolean targetMatches(
@@ -51,15 +67,13 @@ public class Quests
             List<QuestGoal> q,
             String place
     ) {
-        return q.stream()
-                .map(g -> {
-                    if (g instanceof ExploreGoal && placeMatches(place, g)) {
-                        return new ExploreGoal(g.target(), true);
-                    } else {
-                        return g;
-                    }
-                })
-                .toList();
+        return update(q, g -> {
+            if (g instanceof ExploreGoal && placeMatches(place, g)) {
+                return new ExploreGoal(g.target(), true);
+            } else {
+                return g;
+            }
+        });
     }
 
     private static boolean placeMatches(
@@ -6,59 +6,186 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.NewCookie;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.RestForm;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPOutputStream;
 
 @Path("/")
 public class RestServer
 {
     private final static Logger LOG = Logger.getLogger(RestServer.class);
+    private static final String GAME_COOKIE = "game";
     private final ExecutorService executor =
-            Executors.newSingleThreadExecutor();
-    private final DMChannel dmChannel =
-            new InMemoryThreadedDMChannel(executor);
-    private final PlayerChannel playersChannel =
-            new InMemoryThreadedPlayerChannel(executor);
-    private final GameRepository gameRepository = new InMemoryGameRepository();
+            Executors.newVirtualThreadPerTaskExecutor();
+    private final DMChannel dmChannel = new InMemoryThreadedDMChannel(
+            executor,
+            Integer.parseInt(config("dnd.channel.dm.capacity", "64")),
+            OverflowPolicy.valueOf(config("dnd.channel.dm.overflow", "BLOCK")));
+    private final PlayerChannel playersChannel = new InMemoryThreadedPlayerChannel(
+            executor,
+            Integer.parseInt(config("dnd.channel.players.capacity", "1")),
+            OverflowPolicy.valueOf(config("dnd.channel.players.overflow", "LATEST")));
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor();
+    private final Duration passivationCheck =
+            Duration.parse(config("dnd.passivation.check-interval", "PT1M"));
+    private final Duration commitInterval =
+            Duration.parse(config("dnd.journal.commit-interval", "PT0.1S"));
+    private final boolean jdbcRepository =
+            config("dnd.repository", "memory").equals("jdbc");
+    private final WriteBehindGameStore gameStore = jdbcRepository ? null :
+            new WriteBehindGameStore(
+                    new GameJournal(
+                            Paths.get(config("dnd.journal.dir", "games")),
+                            Integer.parseInt(config("dnd.journal.snapshot-every", "100")),
+                            Integer.parseInt(config("dnd.journal.segment-bytes", "4194304"))),
+                    Duration.parse(config("dnd.journal.fsync-interval", "PT1S")));
+    private final GameRepository gameRepository = jdbcRepository
+            ? new JdbcGameRepository(
+                    config("dnd.jdbc.url", "jdbc:h2:file:./games/dnd"),
+                    Integer.parseInt(config("dnd.jdbc.pool-size", "4")),
+                    Integer.parseInt(config("dnd.jdbc.cache-size", "1024")))
+            : new InMemoryGameRepository(
+                    gameStore,
+                    Duration.parse(config("dnd.passivation.idle-time", "PT30M")));
     private final DndCombat combat = new DndCombat();
     private final DnD dnd = new DnD(gameRepository, dmChannel, playersChannel, combat);
-    private final DM dm = new AiDM(playersChannel, gameRepository);
+    private final boolean streaming =
+            Boolean.parseBoolean(config("dnd.ai.streaming", "true"));
+    private final LocalChatModel localModel = config("dnd.ai.model", "openai").equals("local")
+            ? new LocalChatModel(
+                    Long.parseLong(config("dnd.ai.local.seed", "42")),
+                    LocalChatModel.LatencyProfile.parse(config("dnd.ai.local.latency", "lognormal:800:0.5")),
+                    Double.parseDouble(config("dnd.ai.local.error-rate", "0")),
+                    Long.parseLong(config("dnd.ai.local.token-millis", "5")))
+            : null;
+    private final Duration narrationInterval =
+            Duration.parse(config("dnd.ai.narration-interval", "PT0.25S"));
+    private final Duration aiDeadline =
+            Duration.parse(config("dnd.ai.deadline", "PT30S"));
+    // attempts the guard gave up on must not outlive their deadline, and
+    // the client cannot cut short a call that a longer one allows
+    private final Duration aiTimeout = longestDeadline(aiDeadline);
+    private final AiCallGuard aiGuard = new AiCallGuard(
+            executor,
+            method -> Duration.parse(config("dnd.ai.deadline." + method, aiDeadline.toString())),
+            Boolean.parseBoolean(config("dnd.ai.hedge", "true")),
+            Integer.parseInt(config("dnd.ai.breaker.failures", "5")),
+            Duration.parse(config("dnd.ai.breaker.open-for", "PT30S")));
+    private final AiAssistants assistants = localModel != null
+            ? new AiAssistants(localModel, streaming ? localModel.streaming() : null, narrationInterval, aiGuard)
+            : new AiAssistants(
+                    AiAssistants.openAi(
+                            System.getenv("OPENAI_API_KEY"),
+                            aiTimeout,
+                            Integer.parseInt(config("dnd.ai.max-retries", "0"))),
+                    streaming
+                            ? AiAssistants.openAiStreaming(
+                                    System.getenv("OPENAI_API_KEY"),
+                                    aiTimeout)
+                            : null,
+                    narrationInterval,
+                    aiGuard);
+    private final DM dm = new AiDM(
+            playersChannel,
+            gameRepository,
+            assistants,
+            new ExploreCache(
+                    Integer.parseInt(config("dnd.ai.explore-cache.size", "1024")),
+                    Duration.parse(config("dnd.ai.explore-cache.ttl", "PT1H")),
+                    Optional.of(config("dnd.ai.explore-cache.dir", ""))
+                            .filter(dir -> !dir.isBlank())
+                            .map(Paths::get)
+                            .orElse(null),
+                    Integer.parseInt(config("dnd.ai.explore-cache.disk-size", "16384"))),
+            new Prefetcher(
+                    executor,
+                    Integer.parseInt(config("dnd.ai.prefetch.concurrency", "2")),
+                    Integer.parseInt(config("dnd.ai.prefetch.calls", "3")),
+                    Integer.parseInt(config("dnd.ai.prefetch.games", "1024"))),
+            new DiaryCompactor(
+                    assistants::summarize,
+                    executor,
+                    Integer.parseInt(config("dnd.ai.diary.keep-recent", "10")),
+                    Integer.parseInt(config("dnd.ai.diary.fold-every", "10")),
+                    Integer.parseInt(config("dnd.ai.diary.token-budget", "600")),
+                    Integer.parseInt(config("dnd.ai.diary.games", "1024"))),
+            new DialogueMemories(
+                    Integer.parseInt(config("dnd.ai.dialogue.token-budget", "1500")),
+                    Integer.parseInt(config("dnd.ai.dialogue.conversations", "1024"))));
 
     @PostConstruct
     public void initialize() {
-        dmChannel.subscribe(action -> {
+        dmChannel.subscribe((gameId, action) -> {
             try {
-                dm.process(action);
+                dm.process(gameId, action);
             } catch (Exception e) {
                 LOG.error(e);
             }
         });
+        switch (gameRepository) {
+            case JdbcGameRepository jdbc -> scheduler.scheduleWithFixedDelay(
+                    jdbc::flush,
+                    commitInterval.toMillis(),
+                    commitInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            case InMemoryGameRepository memory -> {
+                scheduler.scheduleWithFixedDelay(
+                        memory::passivateIdle,
+                        passivationCheck.toMillis(),
+                        passivationCheck.toMillis(),
+                        TimeUnit.MILLISECONDS);
+                scheduler.scheduleWithFixedDelay(
+                        gameStore::commit,
+                        commitInterval.toMillis(),
+                        commitInterval.toMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            default -> {}
+        }
     }
 
     @PreDestroy
     public void shutDown()
     throws InterruptedException {
+        scheduler.shutdown();
         executor.shutdown();
         assert(executor.awaitTermination(3, TimeUnit.SECONDS));
+        if (gameRepository instanceof JdbcGameRepository jdbc)
+            jdbc.close();
+        else
+            gameStore.flush();
     }
 
     @POST
     @Path("/character")
     @Produces(MediaType.TEXT_HTML)
     public Response createCharacter(
+            @CookieParam(GAME_COOKIE) String gameId,
             @FormParam("name") String name,
             @FormParam("class") String clazz,
             @FormParam("level") int level,
@@ -106,9 +233,11 @@ public class RestServer
                 DndCombat.spellSlots(charClass, level)
         );
         Game game = GameSaveLoad.createGameFrom(background, place, gameChar);
-        gameRepository.save(game);
+        String id = gameIdOrNew(gameId);
+        gameRepository.save(id, game);
         return Response.ok()
                 .header("HX-Redirect", "/")
+                .cookie(gameCookie(id))
                 .build();
     }
 
@@ -116,12 +245,13 @@ public class RestServer
     @Path("/quest")
     @Produces(MediaType.TEXT_HTML)
     public Response createQuest(
+            @CookieParam(GAME_COOKIE) String gameId,
             @FormParam("background") String background,
             @FormParam("place") String place
     ) {
-        Game game = gameRepository.game().orElseThrow();
+        Game game = gameRepository.game(gameId).orElseThrow();
         Game newGame = GameSaveLoad.createGameFrom(background, place, game.playerChar());
-        gameRepository.save(newGame);
+        gameRepository.save(gameId, newGame);
         return Response.ok()
                 .header("HX-Redirect", "/")
                 .build();
@@ -134,12 +264,25 @@ public class RestServer
         return "Hello from Quarkus REST";
     }
 
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new TreeMap<>(gameRepository.metrics());
+        dmChannel.metrics().forEach((k, v) -> metrics.put("dm." + k, v));
+        playersChannel.metrics().forEach((k, v) -> metrics.put("players." + k, v));
+        metrics.putAll(dm.metrics());
+        if (localModel != null)
+            metrics.putAll(localModel.metrics());
+        return metrics;
+    }
+
     @GET
     @Path("/game")
     @Produces(MediaType.TEXT_HTML)
-    public Response enter() {
-        return dnd.enter()
-                .map(this::toHtml)
+    public Response enter(@CookieParam(GAME_COOKIE) String gameId) {
+        return dnd.enter(gameId)
+                .map(po -> toHtml(gameId, po))
                 .map(Response::ok)
                 .orElse(Response.ok().header("HX-Redirect", "/create.html"))
                 .build();
@@ -148,76 +291,139 @@ public class RestServer
     @POST
     @Path("/actions")
     public void doAction(
+            @CookieParam(GAME_COOKIE) String gameId,
             @FormParam("action") String action,
             @FormParam("info") String info
     ) {
-        Game game = gameRepository.game().orElseThrow();
-        dnd.doAction(ViewEncoderDecoder.decodeAction(action, info, game));
+        Game game = gameRepository.game(gameId).orElseThrow();
+        dnd.doAction(gameId, ViewEncoderDecoder.decodeAction(action, info, game));
     }
 
     @POST
     @Path("/combat")
     public void combat(
+            @CookieParam(GAME_COOKIE) String gameId,
             @FormParam("action") String action,
             @FormParam("info") String info,
             @FormParam("bonus") boolean bonusAction
     ) {
         CombatActions combatAction = ViewEncoderDecoder.decodeCombatAction(action, info);
-        dnd.playCombatAction(combatAction, bonusAction);
+        dnd.playCombatAction(gameId, combatAction, bonusAction);
     }
 
     @GET
     @Produces(MediaType.SERVER_SENT_EVENTS)
     @Path("/updates")
     @RestStreamElementType("text/html")
-    public Multi<String> updatesStream() {
-        return Multi.createFrom().<String>emitter(
-                        me -> playersChannel.subscribe(
-                                po -> me.emit(toHtml(po))))
-                .onItem().call(i ->
-                        // Delay the emission until the returned uni emits its item
-                        Uni.createFrom().nullItem().onItem().delayIt().by(Duration.ofMillis(500))
-                )
+    public Multi<String> updatesStream(
+            @CookieParam(GAME_COOKIE) String gameId,
+            @QueryParam("pace") @DefaultValue("0") long paceMillis
+    ) {
+        // A client that falls behind only gets the latest output rendered
+        Multi<PlayerOutput> outputs = Multi.createFrom().<PlayerOutput>emitter(me -> {
+                    if (gameId == null) {
+                        me.complete();
+                        return;
+                    }
+                    Subscription subscription = playersChannel.subscribe(gameId, me::emit);
+                    me.onTermination(subscription::cancel);
+                })
+                .onOverflow().dropPreviousItems();
+        Multi<PlayerOutput> paced = paceMillis > 0
+                ? outputs.onItem().call(i ->
+                        Uni.createFrom().nullItem().onItem().delayIt().by(Duration.ofMillis(paceMillis)))
+                : outputs;
+        return paced
+                .onItem().transform(po -> toHtml(gameId, po))
                 .onFailure().retry().withBackOff(Duration.ofMillis(100)).indefinitely();
     }
 
     private String toHtml(
+            String gameId,
             PlayerOutput output
     ) {
-        Game game = gameRepository.game().orElseThrow();
+        Game game = gameRepository.game(gameId).orElseThrow();
         return ViewEncoderDecoder.encodeOutput(output, game);
     }
 
+    private static String config(
+            String name,
+            String defaultValue
+    ) {
+        return ConfigProvider.getConfig()
+                .getOptionalValue(name, String.class)
+                .orElse(defaultValue);
+    }
+
+    private static Duration longestDeadline(Duration deadline) {
+        Config config = ConfigProvider.getConfig();
+        return StreamSupport.stream(config.getPropertyNames().spliterator(), false)
+                .filter(name -> name.startsWith("dnd.ai.deadline."))
+                .map(name -> Duration.parse(config.getValue(name, String.class)))
+                .reduce(deadline, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+    }
+
+    private static String gameIdOrNew(String gameId) {
+        return gameId != null && !gameId.isBlank()
+                ? gameId
+                : UUID.randomUUID().toString();
+    }
+
+    private static NewCookie gameCookie(String gameId) {
+        return new NewCookie.Builder(GAME_COOKIE)
+                .value(gameId)
+                .path("/")
+                .httpOnly(true)
+                .build();
+    }
+
     @GET
     @Path("/save")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response save()
-    throws IOException {
-        Optional<Game> game = gameRepository.game();
+    public Response save(
+            @CookieParam(GAME_COOKIE) String gameId,
+            @QueryParam("format") @DefaultValue("json") String format,
+            @QueryParam("gzip") boolean gzip
+    ) {
+        boolean binary = format.equals("binary");
+        String fileName = (binary ? "game.dnd" : "game.json") + (gzip ? ".gz" : "");
+        Optional<Game> game = gameRepository.game(gameId);
         if (game.isEmpty()) {
             return Response.ok("".getBytes(StandardCharsets.UTF_8))
                     .header("Content-disposition",
-                            "attachment; filename=game.json")
-                    .build();
-        } else {
-            String save = GameSaveLoad.save(game.get());
-            return Response.ok(save)
-                    .header("Content-disposition",
-                            "attachment; filename=game.json")
+                            "attachment; filename=" + fileName)
                     .build();
         }
+        StreamingOutput save = os -> {
+            OutputStream out = gzip ? new GZIPOutputStream(os) : os;
+            if (binary)
+                GameSaveLoad.saveBinary(game.get(), out);
+            else
+                GameSaveLoad.save(game.get(), out);
+            if (out instanceof GZIPOutputStream gz)
+                gz.finish();
+        };
+        return Response.ok(save)
+                .header("Content-disposition",
+                        "attachment; filename=" + fileName)
+                .build();
     }
 
     @POST
     @Path("/upload")
-    public Response load(@RestForm("game") FileUpload file)
+    public Response load(
+            @CookieParam(GAME_COOKIE) String gameId,
+            @RestForm("game") FileUpload file
+    )
     throws Exception {
-        try (FileReader r = new FileReader(file.filePath().toFile())
+        try (InputStream is = Files.newInputStream(file.filePath())
         ) {
-            Game game = GameSaveLoad.load(r);
-            gameRepository.save(game);
+            Game game = GameSaveLoad.load(is);
+            String id = gameIdOrNew(gameId);
+            gameRepository.save(id, game);
             return Response.ok()
                     .header("HX-Redirect", "/")
+                    .cookie(gameCookie(id))
                     .build();
         }
     }
@@ -225,8 +431,8 @@ public class RestServer
     @GET
     @Path("/level-up")
     @Produces(MediaType.TEXT_HTML)
-    public String viewLevelUp() {
-        Game game = gameRepository.game().orElseThrow();
+    public String viewLevelUp(@CookieParam(GAME_COOKIE) String gameId) {
+        Game game = gameRepository.game(gameId).orElseThrow();
         GameChar gc = game.playerChar();
         GameChar newGc = DndCombat.levelUp(gc);
         return Templates.template(new LevelUpView(
@@ -242,11 +448,11 @@ public class RestServer
 
     @POST
     @Path("/level-up")
-    public Response saveLevelUp() {
-        Game game = gameRepository.game().orElseThrow();
+    public Response saveLevelUp(@CookieParam(GAME_COOKIE) String gameId) {
+        Game game = gameRepository.game(gameId).orElseThrow();
         GameChar gc = game.playerChar();
         GameChar newGc = DndCombat.levelUp(gc);
-        gameRepository.save(g -> g.withPlayerChar(newGc));
+        gameRepository.save(gameId, g -> g.withPlayerChar(newGc));
         return Response.ok()
                 .header("HX-Redirect", "/")
                 .build();
@@ -0,0 +1,56 @@
+package org.meh.dnd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public class Subscribers<T>
+{
+    private final List<BiConsumer<String, T>> all = new CopyOnWriteArrayList<>();
+    private final Map<String, List<Consumer<T>>> byGame = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Subscription subscribe(BiConsumer<String, T> consumer) {
+        all.add(consumer);
+        count.incrementAndGet();
+        return () -> {
+            if (all.remove(consumer))
+                count.decrementAndGet();
+        };
+    }
+
+    public Subscription subscribe(
+            String gameId,
+            Consumer<T> consumer
+    ) {
+        byGame.compute(gameId, (id, consumers) -> {
+            List<Consumer<T>> newConsumers = consumers == null
+                    ? new CopyOnWriteArrayList<>()
+                    : consumers;
+            newConsumers.add(consumer);
+            return newConsumers;
+        });
+        count.incrementAndGet();
+        return () -> byGame.computeIfPresent(gameId, (id, consumers) -> {
+            if (consumers.remove(consumer))
+                count.decrementAndGet();
+            return consumers.isEmpty() ? null : consumers;
+        });
+    }
+
+    public List<Consumer<T>> consumers(String gameId) {
+        List<Consumer<T>> consumers = new ArrayList<>();
+        all.forEach(c -> consumers.add(message -> c.accept(gameId, message)));
+        consumers.addAll(byGame.getOrDefault(gameId, List.of()));
+        return consumers;
+    }
+
+    public int size() {
+        return count.get();
+    }
+}
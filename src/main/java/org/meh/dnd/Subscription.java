@@ -0,0 +1,6 @@
+package org.meh.dnd;
+
+public interface Subscription
+{
+    void cancel();
+}
@@ -0,0 +1,154 @@
+package org.meh.dnd;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Acknowledges committed changes in memory and hands them to the underlying
+ * store in periodic group commits: every {@link #commit()} writes the latest
+ * version of each game changed since the previous one, and syncs the store
+ * to disk at most once per {@code fsyncInterval}.
+ * <p>
+ * Whatever was acknowledged after the last sync can be lost on a crash; the
+ * age of that window is reported as {@code durability.lag.micros}.
+ */
+public class WriteBehindGameStore
+        implements GameStore
+{
+    private final static Logger LOG = Logger.getLogger(WriteBehindGameStore.class);
+    private final GameStore delegate;
+    private final long fsyncNanos;
+    private final Map<String, Pending> dirty = new ConcurrentHashMap<>();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private long written = 0;
+    private long commits = 0;
+    private long fsyncs = 0;
+    private long lastSync = System.nanoTime();
+    private boolean unsynced = false;
+    private volatile long syncedUpTo = System.nanoTime();
+    private volatile long lastAck = syncedUpTo;
+    private volatile long maxLagNanos = 0;
+
+    private record Pending(long version, Game game) {}
+
+    public WriteBehindGameStore(
+            GameStore delegate,
+            Duration fsyncInterval
+    ) {
+        this.delegate = delegate;
+        this.fsyncNanos = fsyncInterval.toNanos();
+    }
+
+    @Override
+    public void changed(
+            String gameId,
+            long version,
+            Game game
+    ) {
+        dirty.merge(gameId, new Pending(version, game), (older, newer) -> {
+            coalesced.increment();
+            return newer.version() > older.version() ? newer : older;
+        });
+        acknowledged.increment();
+        lastAck = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void write(
+            String gameId,
+            long version,
+            Game game
+    ) throws IOException {
+        Pending pending = dirty.remove(gameId);
+        // a newer change is waiting to be committed, this copy is stale
+        if (pending != null && pending.version() > version) {
+            dirty.merge(gameId, pending,
+                    (a, b) -> a.version() > b.version() ? a : b);
+            return;
+        }
+        delegate.write(gameId, version, game);
+        unsynced = true;
+    }
+
+    @Override
+    public Optional<Game> read(String gameId)
+    throws IOException {
+        Pending pending = dirty.get(gameId);
+        if (pending != null)
+            return Optional.of(pending.game());
+        return delegate.read(gameId);
+    }
+
+    public void commit() {
+        commit(false);
+    }
+
+    public void flush() {
+        commit(true);
+    }
+
+    @Override
+    public void sync() {
+        flush();
+    }
+
+    private synchronized void commit(boolean force) {
+        long start = System.nanoTime();
+        for (String gameId : dirty.keySet()) {
+            Pending pending = dirty.remove(gameId);
+            if (pending == null)
+                continue;
+            try {
+                delegate.changed(gameId, pending.version(), pending.game());
+            } catch (IOException | RuntimeException e) {
+                LOG.errorf(e, "cannot write game %s, retrying on next commit", gameId);
+                dirty.merge(gameId, pending,
+                        (a, b) -> a.version() > b.version() ? a : b);
+                continue;
+            }
+            written++;
+            unsynced = true;
+        }
+        commits++;
+        if (unsynced && (force || start - lastSync >= fsyncNanos)) {
+            try {
+                delegate.sync();
+                fsyncs++;
+                lastSync = start;
+                unsynced = false;
+            } catch (IOException e) {
+                LOG.error("cannot sync game store", e);
+            }
+        }
+        if (!unsynced) {
+            long lag = lastAck > syncedUpTo ? System.nanoTime() - syncedUpTo : 0;
+            maxLagNanos = Math.max(maxLagNanos, lag);
+            syncedUpTo = start;
+        }
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new HashMap<>(delegate.metrics());
+        long lag = lastAck > syncedUpTo ? System.nanoTime() - syncedUpTo : 0;
+        synchronized (this) {
+            metrics.put("writebehind.written", written);
+            metrics.put("writebehind.commits", commits);
+            metrics.put("writebehind.fsyncs", fsyncs);
+        }
+        metrics.put("writebehind.pending", (long) dirty.size());
+        metrics.put("writebehind.acknowledged", acknowledged.sum());
+        metrics.put("writebehind.coalesced", coalesced.sum());
+        metrics.put("durability.lag.micros", lag / 1000);
+        metrics.put("durability.lag.max.micros", Math.max(maxLagNanos, lag) / 1000);
+        return metrics;
+    }
+}
@@ -0,0 +1,33 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AiAssistantsTest
+{
+    @Test
+    void reads_a_string_field_from_a_cut_json_document() {
+        assertNull(AiAssistants.partialString("{\"descr", "description"));
+        assertNull(AiAssistants.partialString("{\"description\": ", "description"));
+        assertEquals("", AiAssistants.partialString("{\"description\": \"", "description"));
+        assertEquals("The \"old\" inn",
+                AiAssistants.partialString("{\"description\": \"The \\\"old\\\" inn", "description"));
+        assertEquals("A line\nanother",
+                AiAssistants.partialString("{\"description\":\"A line\\nanother\\", "description"));
+        assertEquals("Done", AiAssistants.partialString(
+                "{\"description\": \"Done\", \"storyLine\": \"x\"}", "description"));
+    }
+
+    @Test
+    void decodes_a_string_field_fed_a_character_at_a_time() {
+        String json = "{\"storyLine\": null, \"description\": \"Caf\\u00e9 \\\"Old\\\" \\uZZZZ\", \"npcs\": []}";
+        AiAssistants.PartialString partial = new AiAssistants.PartialString("description");
+        String value = null;
+        for (char c : json.toCharArray())
+            value = partial.feed(String.valueOf(c));
+
+        assertEquals("Caf\u00e9 \"Old\" \uFFFD", value);
+    }
+}
@@ -0,0 +1,91 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AiCallGuardTest
+{
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slept " + millis;
+    }
+
+    @Test
+    void calls_past_their_deadline_are_unavailable() {
+        AiCallGuard guard = new AiCallGuard(executor,
+                m -> m.equals("slow") ? Duration.ofMillis(50) : Duration.ofSeconds(5),
+                false, 5, Duration.ofMinutes(1));
+
+        assertThrows(AiCallGuard.UnavailableException.class,
+                () -> guard.call("slow", true, () -> sleep(500)));
+        assertEquals("slept 100", guard.call("fast", true, () -> sleep(100)));
+        assertEquals(1L, guard.metrics().get("ai.timeouts"));
+    }
+
+    @Test
+    void opens_after_consecutive_failures_and_closes_after_a_good_trial()
+            throws InterruptedException {
+        AiCallGuard guard = new AiCallGuard(executor, m -> Duration.ofSeconds(5),
+                false, 2, Duration.ofMillis(100));
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++)
+            assertThrows(AiCallGuard.UnavailableException.class, () -> guard.call("m", true, () -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("down");
+            }));
+        assertThrows(AiCallGuard.UnavailableException.class,
+                () -> guard.call("m", true, attempts::incrementAndGet));
+
+        assertEquals(2, attempts.get());
+        assertEquals(1L, guard.metrics().get("ai.breaker.open"));
+
+        Thread.sleep(150);
+        assertEquals(3, guard.call("m", true, attempts::incrementAndGet));
+        assertEquals(0L, guard.metrics().get("ai.breaker.open"));
+        assertEquals(1L, guard.metrics().get("ai.breaker.rejected"));
+    }
+
+    @Test
+    void each_method_has_its_own_circuit() {
+        AiCallGuard guard = new AiCallGuard(executor, m -> Duration.ofSeconds(5),
+                false, 1, Duration.ofMinutes(1));
+
+        assertThrows(AiCallGuard.UnavailableException.class, () -> guard.call("prefetch", true, () -> {
+            throw new IllegalStateException("down");
+        }));
+
+        assertEquals("ok", guard.call("explore", true, () -> "ok"));
+        assertThrows(AiCallGuard.UnavailableException.class,
+                () -> guard.call("prefetch", true, () -> "ok"));
+    }
+
+    @Test
+    void hedges_calls_slower_than_usual() {
+        AiCallGuard guard = new AiCallGuard(executor, m -> Duration.ofSeconds(5),
+                true, 5, Duration.ofMinutes(1));
+        for (int i = 0; i < 20; i++)
+            guard.call("m", true, () -> sleep(10));
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = guard.call("m", true,
+                () -> attempts.incrementAndGet() == 1 ? sleep(2000) : sleep(10));
+
+        assertEquals("slept 10", result);
+        assertEquals(1L, guard.metrics().get("ai.hedges"));
+        assertEquals(1L, guard.metrics().get("ai.hedge.wins"));
+    }
+}
@@ -0,0 +1,64 @@
+package org.meh.dnd;
+
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DialogueMemoriesTest
+{
+    private final SystemMessage system = new SystemMessage("You are a DM");
+    private final GameChar foo = new GameChar("Foo", 3, CharClass.FIGHTER,
+            10, 10, 15, 1000, 1500, DndCombat.STATS_FIGHTER,
+            List.of(DndCombat.LONGSWORD), List.of(),
+            DndCombat.STANDARD_ACTIONS,
+            new SpellSlots(0, 0, 0, 0, 0, 0, 0, 0, 0));
+    private final ChatWith chat = new ChatWith("Bob", List.of(
+            new ChatMessage(ChatRole.DM, "Bob", "Hello there")));
+
+    @Test
+    void converts_only_new_messages_each_turn() {
+        DialogueMemories memories = new DialogueMemories(1000, 16);
+        memories.memory("game", system, foo, chat, "Hi");
+        ChatWith next = chat.add(
+                new ChatMessage(ChatRole.PLAYER, "Foo", "Hi"),
+                new ChatMessage(ChatRole.DM, "Bob", "What brings you here?"));
+
+        var memory = memories.memory("game", system, foo, next, "Adventure");
+
+        assertEquals(5, memory.messages().size());
+        assertEquals(system, memory.messages().getFirst());
+        assertEquals(new UserMessage("Foo: Adventure"), memory.messages().getLast());
+        assertEquals(3L, memories.metrics().get("dialogue.messages.appended"));
+    }
+
+    @Test
+    void drops_the_oldest_messages_over_budget() {
+        DialogueMemories memories = new DialogueMemories(8, 16);
+        ChatWith next = chat.add(
+                new ChatMessage(ChatRole.PLAYER, "Foo", "Hi"),
+                new ChatMessage(ChatRole.DM, "Bob", "What brings you here?"));
+
+        var memory = memories.memory("game", system, foo, next, "Adventure");
+
+        assertEquals(3, memory.messages().size());
+        assertEquals(2L, memories.metrics().get("dialogue.messages.dropped"));
+    }
+
+    @Test
+    void a_new_dialogue_with_the_same_npc_starts_over() {
+        DialogueMemories memories = new DialogueMemories(1000, 16);
+        memories.memory("game", system, foo, chat.add(
+                new ChatMessage(ChatRole.PLAYER, "Foo", "Hi"),
+                new ChatMessage(ChatRole.DM, "Bob", "Bye")), "Wait");
+
+        var memory = memories.memory("game", system, foo, new ChatWith("Bob", List.of(
+                new ChatMessage(ChatRole.DM, "Bob", "You again?"))), "Yes");
+
+        assertEquals(3, memory.messages().size());
+        assertEquals(1L, memories.metrics().get("dialogue.restarts"));
+    }
+}
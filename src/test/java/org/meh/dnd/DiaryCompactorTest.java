@@ -0,0 +1,66 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DiaryCompactorTest
+{
+    private final List<List<String>> folded = new ArrayList<>();
+    private final DiaryCompactor compactor = new DiaryCompactor(
+            (summary, entries, maxWords) -> {
+                folded.add(entries);
+                return (summary == null ? "" : summary + ", ") + entries.size() + " events";
+            },
+            Runnable::run, 2, 3, 100, 16);
+
+    private static List<String> diary(int size) {
+        return IntStream.range(0, size).mapToObj(i -> "event " + i).toList();
+    }
+
+    @Test
+    void folds_all_but_the_recent_entries_into_a_summary() {
+        assertEquals(diary(4), compactor.lines("game", diary(4)));
+
+        compactor.lines("game", diary(5));
+
+        assertEquals(List.of(diary(3)), folded);
+        assertEquals(List.of("3 events", "event 3", "event 4", "event 5"),
+                compactor.lines("game", diary(6)));
+    }
+
+    @Test
+    void ignores_null_entries() {
+        List<String> diary = new ArrayList<>();
+        for (String entry : diary(6)) {
+            diary.add(entry);
+            diary.add(null);
+        }
+
+        compactor.lines("game", diary);
+
+        assertEquals(List.of(diary(4)), folded);
+        assertEquals(List.of("4 events", "event 4", "event 5"), compactor.lines("game", diary));
+        assertEquals(0L, compactor.metrics().get("diary.fold.failures"));
+    }
+
+    @Test
+    void a_reset_diary_is_not_described_by_an_old_summary() {
+        compactor.lines("game", diary(5));
+
+        assertEquals(List.of("other"), compactor.lines("game", List.of("other")));
+    }
+
+    @Test
+    void keeps_within_the_token_budget() {
+        DiaryCompactor small = new DiaryCompactor(
+                (summary, entries, maxWords) -> "", Runnable::run, 10, 10, 4, 16);
+
+        assertEquals(List.of("event 2", "event 3"), small.lines("game", diary(4)));
+        assertEquals(2L, small.metrics().get("diary.dropped"));
+    }
+}
@@ -27,6 +27,7 @@ class DnDAcceptanceTest
     private static final AvailableActions STANDARD_ACTIONS = new AvailableActions(1, 1, 30);
     private static final SpellSlots SPELL_SLOTS = new SpellSlots(4, 3, 0, 0, 0, 0, 0, 0, 0);
     private static final int XP_GAIN = 100;
+    private static final String GAME_ID = "game";
     private final DMChannel dmChannel = new InMemoryDMChannel();
     private final PlayerChannel playersChannel = new InMemoryPlayerChannel();
     private final GameRepository gameRepository = new InMemoryGameRepository();
@@ -75,7 +76,7 @@ class DnDAcceptanceTest
 
     @BeforeEach
     void setUp() {
-        playersChannel.subscribe(playerOutputs::add);
+        playersChannel.subscribe((gameId, po) -> playerOutputs.add(po));
     }
 
     @Test
@@ -86,49 +87,75 @@ class DnDAcceptanceTest
                 List.of(), STANDARD_ACTIONS, SPELL_SLOTS));
 
         dmOutcome(seeGoblin);
-        dnd.doAction(new Start("forest"));
+        dnd.doAction(GAME_ID, new Start("forest"));
 
         assertEquals(
                 10,
-                gameRepository.game().orElseThrow().playerChar().hp());
+                gameRepository.game(GAME_ID).orElseThrow().playerChar().hp());
         assertEquals(
                 List.of(),
-                gameRepository.game().orElseThrow().diary());
+                gameRepository.game(GAME_ID).orElseThrow().diary());
         assertThat(playerOutputs, contains(seeGoblin));
     }
 
     @Test
     void player_sees_last_output_when_entering() {
         startWith(exploring, new Peace(), EXPLORING, foo);
-        Optional<PlayerOutput> output = dnd.enter();
+        Optional<PlayerOutput> output = dnd.enter(GAME_ID);
         assertEquals(Optional.of(exploring), output);
     }
 
+    @Test
+    void games_are_isolated_by_id() {
+        startWith(exploring, new Peace(), EXPLORING, foo);
+        gameRepository.save("other", new Game(
+                RESTING,
+                List.of(rest),
+                foo,
+                new Peace(),
+                new NoChat(),
+                "Once upon a time in the east...",
+                "Swamp",
+                new Nobody(),
+                List.of(),
+                List.of()
+        ));
+
+        dmOutcome(seeGoblin);
+        dnd.doAction(GAME_ID, new Explore("Dark Forest"));
+
+        assertThat(playerOutputs, contains(seeGoblin));
+        assertEquals(Optional.of(rest), dnd.enter("other"));
+        assertEquals(Optional.of(RESTING), gameRepository.game("other").map(Game::mode));
+        assertEquals(Optional.of("Swamp"), gameRepository.game("other").map(Game::place));
+        assertEquals(Optional.empty(), dnd.enter("unknown"));
+    }
+
     @Test
     void explore_continue_exploring() {
         startWith(exploring, new Peace(), EXPLORING, foo);
 
         dmOutcome(seeGoblin);
-        dnd.doAction(new Explore("Dark Forest"));
+        dnd.doAction(GAME_ID, new Explore("Dark Forest"));
 
         assertThat(playerOutputs, contains(seeGoblin));
 
         assertEquals(
                 Optional.of(EXPLORING),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
     void explore_then_rest() {
         startWith(exploring, new Peace(), EXPLORING, foo);
 
-        dnd.doAction(new Rest());
+        dnd.doAction(GAME_ID, new Rest());
 
         assertThat(playerOutputs, contains(rest));
 
         assertEquals(
                 Optional.of(RESTING),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -136,13 +163,13 @@ class DnDAcceptanceTest
         startWith(seeGoblin, new Peace(), EXPLORING, foo);
         dmOutcome(speakWithGoblin);
 
-        dnd.doAction(new Dialogue("goblin", NpcType.WARRIOR));
+        dnd.doAction(GAME_ID, new Dialogue("goblin", NpcType.WARRIOR));
 
         assertThat(playerOutputs, contains(speakWithGoblin));
 
         assertEquals(
                 Optional.of(DIALOGUE),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -150,13 +177,13 @@ class DnDAcceptanceTest
         startWith(speakWithGoblin, new Peace(), EXPLORING, foo);
         dmOutcome(answerByGoblin);
 
-        dnd.doAction(new Say("goblin"));
+        dnd.doAction(GAME_ID, new Say("goblin"));
 
         assertThat(playerOutputs, contains(answerByGoblin));
 
         assertEquals(
                 Optional.of(DIALOGUE),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -164,20 +191,20 @@ class DnDAcceptanceTest
         startWith(answerByGoblin, new Peace(), EXPLORING, foo);
         dmOutcome(exploring);
 
-        dnd.doAction(new EndDialogue("Bye", new KillGoal(NpcType.BEAST, "Wolf", false)));
+        dnd.doAction(GAME_ID, new EndDialogue("Bye", new KillGoal(NpcType.BEAST, "Wolf", false)));
 
         assertThat(playerOutputs, contains(exploring));
 
         assertEquals(
                 Optional.of(EXPLORING),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
     void explore_attack_player_first() {
         startWith(seeGoblin, new Peace(), EXPLORING, foo);
 
-        dnd.doAction(new Attack("goblin", NpcType.WARRIOR));
+        dnd.doAction(GAME_ID, new Attack("goblin", NpcType.WARRIOR));
 
         assertTrue(playerOutputs.stream().anyMatch(o ->
                 o instanceof CombatOutput c &&
@@ -190,7 +217,7 @@ class DnDAcceptanceTest
         assertEquals(STANDARD_ACTIONS, fight.opponentActions());
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -200,7 +227,7 @@ class DnDAcceptanceTest
 
         startWith(seeGoblin, new Peace(), EXPLORING, foo);
 
-        dnd.doAction(new Attack("goblin", NpcType.WARRIOR));
+        dnd.doAction(GAME_ID, new Attack("goblin", NpcType.WARRIOR));
 
         assertTrue(playerOutputs.stream().anyMatch(o ->
                 o instanceof CombatOutput c &&
@@ -214,7 +241,7 @@ class DnDAcceptanceTest
         assertEquals(new AvailableActions(0, 1, 30), fight.opponentActions());
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -225,9 +252,9 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DAGGER), true);
-        dnd.playCombatAction(new Move(Dir.AWAY_FROM_ENEMY, 5), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DAGGER), true);
+        dnd.playCombatAction(GAME_ID, new Move(Dir.AWAY_FROM_ENEMY, 5), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -262,7 +289,7 @@ class DnDAcceptanceTest
                         new AvailableAction(END_TURN, "", false)))));
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -272,7 +299,7 @@ class DnDAcceptanceTest
                 STANDARD_ACTIONS,
                 XP_GAIN, List.of()), COMBAT, foo);
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -303,7 +330,7 @@ class DnDAcceptanceTest
         );
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -313,10 +340,10 @@ class DnDAcceptanceTest
                 STANDARD_ACTIONS,
                 XP_GAIN, List.of()), COMBAT, foo);
 
-        dnd.playCombatAction(new SpellAttack(MAGIC_MISSILE), false);
-        dnd.playCombatAction(new WeaponAttack(DAGGER), true);
-        dnd.playCombatAction(new Move(Dir.AWAY_FROM_ENEMY, 5), false);
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new SpellAttack(MAGIC_MISSILE), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DAGGER), true);
+        dnd.playCombatAction(GAME_ID, new Move(Dir.AWAY_FROM_ENEMY, 5), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -344,7 +371,7 @@ class DnDAcceptanceTest
                 game().combatStatus());
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -355,7 +382,7 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new SpellAttack(MAGIC_MISSILE), false);
+        dnd.playCombatAction(GAME_ID, new SpellAttack(MAGIC_MISSILE), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -385,7 +412,7 @@ class DnDAcceptanceTest
                         new AvailableAction(END_TURN, "", false)))));
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -400,7 +427,7 @@ class DnDAcceptanceTest
 
         startWith(seeGoblin, new Peace(), EXPLORING, wizard);
 
-        dnd.doAction(new Attack("goblin", NpcType.WARRIOR));
+        dnd.doAction(GAME_ID, new Attack("goblin", NpcType.WARRIOR));
 
         CombatOutput co = (CombatOutput) playerOutputs.getFirst();
 
@@ -426,7 +453,7 @@ class DnDAcceptanceTest
 
         startWith(seeGoblin, new Peace(), EXPLORING, wizard);
 
-        dnd.doAction(new Attack("goblin", NpcType.WARRIOR));
+        dnd.doAction(GAME_ID, new Attack("goblin", NpcType.WARRIOR));
 
         CombatOutput co = (CombatOutput) playerOutputs.getFirst();
 
@@ -456,7 +483,7 @@ class DnDAcceptanceTest
                 COMBAT,
                 wizard);
 
-        dnd.playCombatAction(new SpellAttack(MAGIC_MISSILE), false);
+        dnd.playCombatAction(GAME_ID, new SpellAttack(MAGIC_MISSILE), false);
 
         CombatOutput co = (CombatOutput) playerOutputs.getFirst();
 
@@ -471,7 +498,7 @@ class DnDAcceptanceTest
 
         assertEquals(
                 Optional.of(new SpellSlots(3, 3, 0, 0, 0, 0, 0, 0, 0)),
-                gameRepository.game().map(Game::playerChar).map(GameChar::spellSlots));
+                gameRepository.game(GAME_ID).map(Game::playerChar).map(GameChar::spellSlots));
     }
 
     @Test
@@ -481,7 +508,7 @@ class DnDAcceptanceTest
                 STANDARD_ACTIONS,
                 XP_GAIN, List.of()), COMBAT, foo);
 
-        dnd.playCombatAction(new Move(Dir.TOWARDS_ENEMY, 5), false);
+        dnd.playCombatAction(GAME_ID, new Move(Dir.TOWARDS_ENEMY, 5), false);
 
         assertEquals(
                 new Fight(true, goblin, List.of("Foo: move 5 feet towards " +
@@ -498,7 +525,7 @@ class DnDAcceptanceTest
                         false, false, 5, AVAILABLE_ACTIONS)));
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -511,7 +538,7 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         assertEquals(
                 new Fight(true, goblin,
@@ -531,7 +558,7 @@ class DnDAcceptanceTest
                         false, false, 5, AVAILABLE_ACTIONS)));
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -542,7 +569,7 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
 
         GameChar damaged =
                 new GameChar("goblin",
@@ -569,7 +596,7 @@ class DnDAcceptanceTest
                         new AvailableAction(END_TURN, "", false)))));
         assertEquals(
                 Optional.of(COMBAT),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -580,10 +607,10 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), true);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), true);
 
         GameChar killed =
                 new GameChar("goblin", 3,
@@ -617,7 +644,7 @@ class DnDAcceptanceTest
                         new AvailableAction(END_TURN, "", false)))));
         assertEquals(
                 Optional.of(EXPLORING),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -637,7 +664,7 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         assertEquals(
                 new Fight(false, goblin,
@@ -663,7 +690,7 @@ class DnDAcceptanceTest
                         false, true, 5, AVAILABLE_ACTIONS)));
         assertEquals(
                 Optional.of(EXPLORING),
-                gameRepository.game().map(Game::mode));
+                gameRepository.game(GAME_ID).map(Game::mode));
     }
 
     @Test
@@ -678,10 +705,10 @@ class DnDAcceptanceTest
 
         startWith(exploring, new Peace(), EXPLORING, wizard);
 
-        dnd.doAction(new Rest());
+        dnd.doAction(GAME_ID, new Rest());
 
         assertTrue(
-                gameRepository.game()
+                gameRepository.game(GAME_ID)
                         .map(Game::playerChar)
                         .map(GameChar::spellSlots)
                         .map(SpellSlots::level1)
@@ -696,17 +723,17 @@ class DnDAcceptanceTest
                 1, 10, 15, 1000, 1500, STATS_FIGHTER, List.of(DndCombat.LONGSWORD),
                 List.of(), STANDARD_ACTIONS, SPELL_SLOTS));
 
-        dnd.doAction(new Rest());
+        dnd.doAction(GAME_ID, new Rest());
 
         assertEquals(
                 10,
-                gameRepository.game().orElseThrow().playerChar().hp()
+                gameRepository.game(GAME_ID).orElseThrow().playerChar().hp()
         );
     }
 
     @Test
     void killing_solves_quest_goal() {
-        gameRepository.save(new Game(
+        gameRepository.save(GAME_ID, new Game(
                 COMBAT,
                 List.of(combatGoblin),
                 foo,
@@ -723,10 +750,10 @@ class DnDAcceptanceTest
                 List.of(new KillGoal(NpcType.WARRIOR, "goblin", false))
         ));
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), true);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), true);
 
         assertEquals(
                 List.of(new KillGoal(NpcType.WARRIOR, "goblin", true)),
@@ -735,7 +762,7 @@ class DnDAcceptanceTest
 
     @Test
     void explore_solves_quest_goal() {
-        gameRepository.save(new Game(
+        gameRepository.save(GAME_ID, new Game(
                 EXPLORING,
                 List.of(exploring),
                 foo,
@@ -748,7 +775,7 @@ class DnDAcceptanceTest
                 List.of(new ExploreGoal("Dungeon", false))
         ));
 
-        dnd.doAction(new Explore("The Dungeon"));
+        dnd.doAction(GAME_ID, new Explore("The Dungeon"));
 
         assertEquals(
                 List.of(new ExploreGoal("Dungeon", true)),
@@ -757,7 +784,7 @@ class DnDAcceptanceTest
 
     @Test
     void starting_can_solve_quest_goal() {
-        gameRepository.save(new Game(
+        gameRepository.save(GAME_ID, new Game(
                 EXPLORING,
                 List.of(exploring),
                 foo,
@@ -770,7 +797,7 @@ class DnDAcceptanceTest
                 List.of(new ExploreGoal("Dark Forest", false))
         ));
 
-        dnd.doAction(new Start("Dark Forest"));
+        dnd.doAction(GAME_ID, new Start("Dark Forest"));
 
         assertEquals(
                 List.of(new ExploreGoal("Dark Forest", true)),
@@ -779,7 +806,7 @@ class DnDAcceptanceTest
 
     @Test
     void talking_can_solve_quest_goal() {
-        gameRepository.save(new Game(
+        gameRepository.save(GAME_ID, new Game(
                 EXPLORING,
                 List.of(exploring),
                 foo,
@@ -792,7 +819,7 @@ class DnDAcceptanceTest
                 List.of(new TalkGoal(NpcType.MAGIC, "Elf Sage", false))
         ));
 
-        dnd.doAction(new Dialogue("Elf Sage", NpcType.MAGIC));
+        dnd.doAction(GAME_ID, new Dialogue("Elf Sage", NpcType.MAGIC));
 
         assertEquals(
                 List.of(new TalkGoal(NpcType.MAGIC, "Elf Sage", true)),
@@ -815,10 +842,10 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, gc);
 
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), false);
-        dnd.playCombatAction(new WeaponAttack(DndCombat.LONGSWORD), true);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), false);
+        dnd.playCombatAction(GAME_ID, new WeaponAttack(DndCombat.LONGSWORD), true);
 
         assertTrue(game().playerChar().xp() > 1000);
     }
@@ -850,8 +877,8 @@ class DnDAcceptanceTest
                 STANDARD_ACTIONS,
                 XP_GAIN, List.of()), COMBAT, foo);
 
-        dnd.playCombatAction(new SpellAttack(MELF_ARROW), false);
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new SpellAttack(MELF_ARROW), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -891,8 +918,8 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new EndTurn(), false);
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         assertEquals(
                 new Fight(true, goblin,
@@ -925,8 +952,8 @@ class DnDAcceptanceTest
                         XP_GAIN, List.of()),
                 COMBAT, foo);
 
-        dnd.playCombatAction(new EndTurn(), false);
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         assertTrue(game().playerChar().xp() == 1000);
         assertTrue(game().playerChar().isDead());
@@ -986,8 +1013,8 @@ class DnDAcceptanceTest
                 STANDARD_ACTIONS,
                 XP_GAIN, List.of()), COMBAT, foo);
 
-        dnd.playCombatAction(new SpellAttack(MELF_ARROW), false);
-        dnd.playCombatAction(new EndTurn(), false);
+        dnd.playCombatAction(GAME_ID, new SpellAttack(MELF_ARROW), false);
+        dnd.playCombatAction(GAME_ID, new EndTurn(), false);
 
         GameChar newGoblin = new GameChar(
                 "goblin",
@@ -1019,11 +1046,11 @@ class DnDAcceptanceTest
     private void dmOutcome(
             PlayerOutput output
     ) {
-        dmChannel.subscribe(pi -> playersChannel.post(output));
+        dmChannel.subscribe((gameId, pi) -> playersChannel.post(gameId, output));
     }
 
     private Game game() {
-        return gameRepository.game().orElseThrow();
+        return gameRepository.game(GAME_ID).orElseThrow();
     }
 
     private void startWith(
@@ -1044,7 +1071,7 @@ class DnDAcceptanceTest
                 List.of(),
                 List.of()
         );
-        gameRepository.save(game);
+        gameRepository.save(GAME_ID, game);
     }
 
     private static class MockCombat implements Combat
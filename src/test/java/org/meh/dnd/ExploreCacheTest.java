@@ -0,0 +1,85 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.meh.dnd.AiEntities.*;
+
+class ExploreCacheTest
+{
+    private final AtomicLong now = new AtomicLong(0);
+    private final ParsedExploreResponse response = new ParsedExploreResponse(
+            "A dark forest",
+            List.of(new NPC("Goblin", NpcType.WARRIOR, true)),
+            List.of(new Place("Swamp")),
+            "Into the woods");
+
+    @Test
+    void fingerprint_ignores_case_and_whitespace() {
+        assertEquals(
+                ExploreCache.fingerprint(List.of("Dark  Forest", "Foo")),
+                ExploreCache.fingerprint(List.of(" dark forest\n", "FOO")));
+    }
+
+    @Test
+    void evicts_least_recently_used_and_expires_old_responses() {
+        ExploreCache cache = new ExploreCache(2, Duration.ofSeconds(10), null, 10, now::get);
+        cache.put("a", response);
+        cache.put("b", response);
+        cache.get("a");
+        cache.put("c", response);
+
+        assertEquals(Optional.empty(), cache.get("b"));
+        assertEquals(Optional.of(response), cache.get("a"));
+
+        now.set(10_000);
+
+        assertEquals(Optional.empty(), cache.get("c"));
+        assertEquals(2L, cache.metrics().get("explore.cache.hits"));
+        assertEquals(2L, cache.metrics().get("explore.cache.misses"));
+        assertEquals(1L, cache.metrics().get("explore.cache.evictions"));
+        assertEquals(1L, cache.metrics().get("explore.cache.expired"));
+    }
+
+    @Test
+    void responses_on_disk_survive_a_restart(@TempDir Path dir) {
+        new ExploreCache(2, Duration.ofSeconds(10), dir, 10, now::get).put("a", response);
+
+        ExploreCache restarted = new ExploreCache(2, Duration.ofSeconds(10), dir, 10, now::get);
+
+        assertEquals(Optional.of(response), restarted.get("a"));
+        assertEquals(1L, restarted.metrics().get("explore.cache.hits.disk"));
+    }
+
+    @Test
+    void disk_keeps_the_newest_responses_and_sweeps_expired_ones_on_startup(@TempDir Path dir)
+    throws Exception {
+        ExploreCache cache = new ExploreCache(1, Duration.ofSeconds(100), dir, 10, now::get);
+        for (int i = 0; i < 11; i++) {
+            now.set(i * 1000);
+            cache.put("k" + i, response);
+        }
+
+        assertEquals(9L, cache.metrics().get("explore.cache.disk.files"));
+        assertEquals(2L, cache.metrics().get("explore.cache.disk.evictions"));
+        assertEquals(Optional.empty(), cache.get("k1"));
+        assertEquals(Optional.of(response), cache.get("k2"));
+
+        now.set(105_000);
+        ExploreCache restarted = new ExploreCache(1, Duration.ofSeconds(100), dir, 10, now::get);
+
+        assertEquals(5L, restarted.metrics().get("explore.cache.disk.files"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(5, files.count());
+        }
+    }
+}
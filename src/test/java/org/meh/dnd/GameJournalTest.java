@@ -0,0 +1,212 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.meh.dnd.AvailableActionType.*;
+import static org.meh.dnd.DndCombat.*;
+import static org.meh.dnd.FightOutcome.IN_PROGRESS;
+import static org.meh.dnd.GameMode.*;
+
+class GameJournalTest
+{
+    private static final int SEGMENT_BYTES = 4096;
+    private static final AvailableActions STANDARD_ACTIONS = new AvailableActions(1, 1, 30);
+    private static final SpellSlots SPELL_SLOTS = new SpellSlots(4, 3, 0, 0, 0, 0, 0, 0, 0);
+    private final GameChar foo = new GameChar("Foo", 3,
+            CharClass.WIZARD,
+            10, 10, 15, 1000, 1500, STATS_WIZARD, List.of(DAGGER),
+            List.of(MAGIC_MISSILE, MELF_ARROW), STANDARD_ACTIONS,
+            SPELL_SLOTS);
+    private final GameChar goblin = new GameChar(
+            "goblin",
+            3,
+            CharClass.FIGHTER,
+            10, 10, 15, 1000, 1500,
+            STATS_FIGHTER,
+            List.of(LONGSWORD),
+            List.of(),
+            STANDARD_ACTIONS,
+            SPELL_SLOTS);
+    private final Game game = new Game(
+            EXPLORING,
+            List.of(new ExploreOutput(
+                    "Dark Forest",
+                    "You see a goblin, what do you do?",
+                    List.of(new Attack("goblin", NpcType.WARRIOR),
+                            new Dialogue("goblin", NpcType.WARRIOR),
+                            new Rest()),
+                    "Met a goblin")),
+            foo,
+            new Peace(),
+            new NoChat(),
+            "Once upon a time in the west...",
+            "Dark Forest",
+            new Nobody(),
+            List.of("Met a goblin"),
+            List.of(new KillGoal(NpcType.WARRIOR, "goblin", false),
+                    new ExploreGoal("Dark Forest", true))
+    );
+    private final Fight fight = new Fight(
+            true,
+            goblin,
+            List.of("Foo: melf arrow (3 hp damage)"),
+            5,
+            IN_PROGRESS,
+            STANDARD_ACTIONS,
+            STANDARD_ACTIONS,
+            100,
+            List.of(new DelayedEffect(1,
+                    List.of(new DamageRoll(1, Die.D4, Stat.INT)),
+                    foo, goblin, new SpellAttack(MELF_ARROW))));
+
+    @Test
+    void recovers_snapshot_and_journal_tail(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 100, SEGMENT_BYTES);
+        Game fighting = game
+                .withMode(COMBAT)
+                .withFightStatus(fight)
+                .withLastOutput(new CombatOutput(true, STANDARD_ACTIONS,
+                        STANDARD_ACTIONS, goblin, fight.log(), false, false, 5,
+                        List.of(new AvailableAction(END_TURN, "", false))));
+        Game talking = fighting
+                .withMode(DIALOGUE)
+                .withFightStatus(new Peace())
+                .withDialogueTarget(new Somebody("goblin", NpcType.WARRIOR))
+                .withChat(new ChatWith("goblin", List.of(
+                        new ChatMessage(ChatRole.DM, "goblin", "hey there"))))
+                .withStoryLine("Spared the goblin");
+
+        journal.changed("game", 1, game);
+        journal.changed("game", 2, fighting);
+        journal.changed("game", 3, talking);
+
+        assertEquals(Optional.of(talking), new GameJournal(dir, 100, SEGMENT_BYTES).read("game"));
+        assertEquals(1L, journal.metrics().get("journal.snapshots"));
+        assertEquals(2L, journal.metrics().get("journal.appends"));
+    }
+
+    @Test
+    void stale_versions_are_ignored(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 100, SEGMENT_BYTES);
+
+        journal.changed("game", 1, game);
+        journal.changed("game", 3, game.withPlace("Swamp"));
+        journal.changed("game", 2, game.withPlace("Mountains"));
+
+        assertEquals(Optional.of("Swamp"),
+                new GameJournal(dir, 100, SEGMENT_BYTES).read("game").map(Game::place));
+    }
+
+    @Test
+    void folds_journal_into_snapshot(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 2, SEGMENT_BYTES);
+        Game current = game;
+        for (int i = 0; i < 5; i++) {
+            current = current.withStoryLine("event " + i);
+            journal.changed("game", i, current);
+        }
+
+        assertEquals(Optional.of(current), new GameJournal(dir, 2, SEGMENT_BYTES).read("game"));
+        assertEquals(2L, journal.metrics().get("journal.snapshots"));
+    }
+
+    @Test
+    void ignores_torn_journal_tail(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 100, SEGMENT_BYTES);
+        journal.changed("game", 1, game);
+        journal.changed("game", 2, game.withPlace("Swamp"));
+        journal.changed("game", 3, game.withPlace("Mountains"));
+        Path segment = segments(dir).getLast();
+        byte[] bytes = Files.readAllBytes(segment);
+        int last = bytes.length - 1;
+        while (bytes[last] == 0)
+            last--;
+        bytes[last] = 'x';
+        Files.write(segment, bytes);
+
+        assertEquals(Optional.of("Swamp"),
+                new GameJournal(dir, 100, SEGMENT_BYTES).read("game").map(Game::place));
+    }
+
+    @Test
+    void compacts_segments_covered_by_snapshots(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 10, SEGMENT_BYTES);
+        Game current = game;
+        for (int i = 0; i < 500; i++) {
+            current = current.withStoryLine("event " + i);
+            journal.changed("game", i, current);
+        }
+
+        assertTrue(segments(dir).size() <= 3, "segments: " + segments(dir));
+        assertTrue(journal.metrics().get("journal.segments.compacted") > 0);
+        GameJournal recovered = new GameJournal(dir, 10, SEGMENT_BYTES);
+        assertEquals(Optional.of(current), recovered.read("game"));
+        assertTrue(recovered.metrics().get("journal.replayed") < 10);
+    }
+
+    @Test
+    void games_not_loaded_after_a_restart_do_not_pin_segments(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 10, SEGMENT_BYTES);
+        Game abandoned = game.withPlace("Swamp");
+        journal.changed("abandoned", 1, game);
+        journal.changed("abandoned", 2, abandoned);
+
+        GameJournal restarted = new GameJournal(dir, 10, SEGMENT_BYTES);
+        Game current = game;
+        for (int i = 0; i < 500; i++) {
+            current = current.withStoryLine("event " + i);
+            restarted.changed("active", i, current);
+        }
+
+        assertTrue(segments(dir).size() <= 3, "segments: " + segments(dir));
+        GameJournal recovered = new GameJournal(dir, 10, SEGMENT_BYTES);
+        assertEquals(Optional.of(abandoned), recovered.read("abandoned"));
+        assertEquals(Optional.of(current), recovered.read("active"));
+    }
+
+    @Test
+    void journals_a_sliding_window_of_recent_outputs(@TempDir Path dir)
+    throws Exception {
+        GameJournal journal = new GameJournal(dir, 100, SEGMENT_BYTES);
+        Game current = game;
+        for (int i = 0; i < 20; i++) {
+            current = current.withLastOutput(new RestOutput());
+            journal.changed("game", i, current);
+        }
+
+        assertEquals(Game.RECENT_EVENTS, current.events().size());
+        assertEquals(Optional.of(current), new GameJournal(dir, 100, SEGMENT_BYTES).read("game"));
+    }
+
+    @Test
+    void unknown_games_are_not_found(@TempDir Path dir)
+    throws Exception {
+        assertEquals(Optional.empty(), new GameJournal(dir, 100, SEGMENT_BYTES).read("unknown"));
+    }
+
+    private static List<Path> segments(Path dir)
+    throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(f -> f.toString().endsWith(".segment"))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameMailboxesTest
+{
+    @Test
+    void tasks_of_one_game_run_in_order()
+    throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameMailboxes mailboxes = new GameMailboxes(executor, 1000, OverflowPolicy.BLOCK);
+            List<Integer> seen = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(1000);
+            IntStream.range(0, 1000).forEach(i -> mailboxes.submit("game", () -> {
+                seen.add(i);
+                done.countDown();
+            }));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(IntStream.range(0, 1000).boxed().toList(), seen);
+        }
+    }
+
+    @Test
+    void drained_mailboxes_are_removed()
+    throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameMailboxes mailboxes = new GameMailboxes(executor, 16, OverflowPolicy.BLOCK);
+            for (int round = 0; round < 3; round++) {
+                CountDownLatch done = new CountDownLatch(100);
+                IntStream.range(0, 100).forEach(i -> mailboxes.submit("game" + i, done::countDown));
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (mailboxes.metrics().get("queue.mailboxes") > 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(0L, mailboxes.metrics().get("queue.mailboxes"));
+            assertEquals(0L, mailboxes.metrics().get("queue.depth"));
+        }
+    }
+
+    @Test
+    void a_waiting_submitter_moves_to_a_new_mailbox_if_the_old_one_retires()
+    throws Exception {
+        BlockingQueue<Runnable> workers = new LinkedBlockingQueue<>();
+        GameMailboxes mailboxes = new GameMailboxes(workers::add, 1, OverflowPolicy.BLOCK);
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        mailboxes.submit("game", () -> seen.add(1));
+        Runnable worker = workers.take();
+        Thread waiting = Thread.ofPlatform().start(() -> mailboxes.submit("game", () -> seen.add(2)));
+        while (waiting.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        // the worker drains the mailbox before the waiting submitter
+        // gets the monitor back
+        synchronized (worker) {
+            worker.run();
+        }
+        waiting.join(5000);
+
+        assertEquals(1L, mailboxes.metrics().get("queue.mailboxes"));
+        Runnable next = workers.take();
+        assertNotSame(worker, next);
+        next.run();
+        assertEquals(List.of(1, 2), seen);
+        assertEquals(0L, mailboxes.metrics().get("queue.depth"));
+    }
+
+    @Test
+    void a_blocked_game_does_not_stall_others()
+    throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameMailboxes mailboxes = new GameMailboxes(executor, 1000, OverflowPolicy.BLOCK);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch otherDone = new CountDownLatch(1);
+            mailboxes.submit("slow", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            mailboxes.submit("fast", otherDone::countDown);
+            assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        }
+    }
+
+    @Test
+    void latest_policy_rejects_a_larger_capacity() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GameMailboxes(Runnable::run, 16, OverflowPolicy.LATEST));
+    }
+
+    @Test
+    void latest_policy_keeps_only_the_newest_pending_task()
+    throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameMailboxes mailboxes = new GameMailboxes(executor, 1, OverflowPolicy.LATEST);
+            List<Integer> seen = new CopyOnWriteArrayList<>();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(1);
+            mailboxes.submit("game", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            IntStream.range(0, 5).forEach(i -> mailboxes.submit("game", () -> {
+                seen.add(i);
+                done.countDown();
+            }));
+            release.countDown();
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(4), seen);
+            assertEquals(4L, mailboxes.metrics().get("queue.dropped"));
+        }
+    }
+
+    @Test
+    void drop_oldest_policy_discards_the_head_of_the_queue()
+    throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameMailboxes mailboxes = new GameMailboxes(executor, 2, OverflowPolicy.DROP_OLDEST);
+            List<Integer> seen = new CopyOnWriteArrayList<>();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            mailboxes.submit("game", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            IntStream.range(0, 5).forEach(i -> mailboxes.submit("game", () -> {
+                seen.add(i);
+                done.countDown();
+            }));
+            release.countDown();
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(3, 4), seen);
+            assertEquals(3L, mailboxes.metrics().get("queue.dropped"));
+        }
+    }
+}
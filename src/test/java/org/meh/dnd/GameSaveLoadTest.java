@@ -1,13 +1,22 @@
 package org.meh.dnd;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.meh.dnd.AvailableActionType.*;
 import static org.meh.dnd.DndCombat.*;
+import static org.meh.dnd.GameMode.COMBAT;
 import static org.meh.dnd.GameMode.EXPLORING;
 
 class GameSaveLoadTest
@@ -38,7 +47,7 @@ class GameSaveLoadTest
             SPELL_SLOTS);
 
     @Test
-    void save_load_no_quests()
+    void legacy_save_load_no_quests()
     throws Exception {
         Game game = new Game(
                 EXPLORING,
@@ -52,7 +61,7 @@ class GameSaveLoadTest
                 List.of(),
                 List.of()
         );
-        String saveStr = GameSaveLoad.save(game);
+        String saveStr = legacySave(game);
         Game g = GameSaveLoad.load(new StringReader(saveStr));
         Game saved = new Game(
                 EXPLORING,
@@ -74,7 +83,7 @@ class GameSaveLoadTest
     }
 
     @Test
-    void save_load_with_quests()
+    void legacy_save_load_with_quests()
     throws Exception {
         Game game = new Game(
                 EXPLORING,
@@ -88,7 +97,7 @@ class GameSaveLoadTest
                 List.of(),
                 List.of(new KillGoal(NpcType.WARRIOR, "goblin", false))
         );
-        String saveStr = GameSaveLoad.save(game);
+        String saveStr = legacySave(game);
         Game g = GameSaveLoad.load(new StringReader(saveStr));
         Game saved = new Game(
                 EXPLORING,
@@ -108,4 +117,122 @@ class GameSaveLoadTest
         );
         assertEquals(saved, g);
     }
-}
\ No newline at end of file
+
+    @Test
+    void save_load_keeps_fight_and_chat()
+    throws Exception {
+        Fight fight = new Fight(
+                false,
+                goblin,
+                List.of("Foo: melf arrow (3 hp damage)"),
+                5,
+                FightOutcome.IN_PROGRESS,
+                STANDARD_ACTIONS,
+                new AvailableActions(0, 1, 10),
+                100,
+                List.of(new DelayedEffect(1,
+                        List.of(new DamageRoll(2, Die.D8, Stat.INT)),
+                        foo, goblin, new SpellAttack(MELF_ARROW))));
+        Game game = new Game(
+                COMBAT,
+                List.of(new DialogueOutput("Who goes there?", List.of(
+                                new Say("A friend"),
+                                new EndDialogue("Bye", new TalkGoal(NpcType.WARRIOR, "goblin", true)))),
+                        combatGoblin),
+                foo,
+                fight,
+                new ChatWith("goblin", List.of(
+                        new ChatMessage(ChatRole.DM, "goblin", "Who goes there?"),
+                        new ChatMessage(ChatRole.PLAYER, "Foo", "A friend"))),
+                "Once upon a time in the west...",
+                "Dark Forest",
+                new Somebody("goblin", NpcType.WARRIOR),
+                List.of("Met a goblin"),
+                List.of(new KillGoal(NpcType.WARRIOR, "goblin", false))
+        );
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        GameSaveLoad.saveBinary(game, binary);
+
+        assertEquals(game, GameSaveLoad.load(new StringReader(GameSaveLoad.save(game))));
+        assertEquals(game, GameSaveLoad.load(new ByteArrayInputStream(binary.toByteArray())));
+    }
+
+    @Test
+    void binary_save_loads_like_json()
+    throws Exception {
+        GameChar custom = new GameChar("Bar", 2,
+                CharClass.WIZARD,
+                -1, 10, 12, 0, 300, STATS_WIZARD,
+                List.of(DAGGER, new Weapon("club", false, Die.D4, false, true)),
+                List.of(FIRE_BOLT, new Spell("Frost Ray", true, Die.D8, true, 0)),
+                STANDARD_ACTIONS,
+                SPELL_SLOTS);
+        Game game = new Game(
+                EXPLORING,
+                List.of(combatGoblin),
+                custom,
+                new Peace(),
+                new NoChat(),
+                "Once upon a time in the west... \u2694",
+                "Dark Forest",
+                new Nobody(),
+                List.of("Met a goblin", ""),
+                List.of(new KillGoal(NpcType.WARRIOR, "goblin", false),
+                        new ExploreGoal("Dark Forest", true))
+        );
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        GameSaveLoad.saveBinary(game, binary);
+        byte[] json = GameSaveLoad.save(game).getBytes(StandardCharsets.UTF_8);
+
+        Game fromBinary = GameSaveLoad.load(new ByteArrayInputStream(binary.toByteArray()));
+
+        assertEquals(GameSaveLoad.load(new ByteArrayInputStream(json)), fromBinary);
+        assertEquals(custom, fromBinary.playerChar());
+        assertTrue(binary.size() * 4 < json.length,
+                binary.size() + " bytes vs " + json.length);
+    }
+
+    @Test
+    void binary_save_with_a_bad_ordinal_is_rejected()
+    throws Exception {
+        Game game = GameSaveLoad.createGameFrom("Once upon a time in the west...", "Dark Forest", foo);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        GameSaveLoad.saveBinary(game, binary);
+        byte[] bytes = binary.toByteArray();
+        // the game mode follows the magic and the version
+        bytes[GameBinary.headerLength() + 1] = 100;
+
+        IOException e = assertThrows(IOException.class,
+                () -> GameSaveLoad.load(new ByteArrayInputStream(bytes)));
+        assertTrue(e.getMessage().startsWith("bad ordinal"), e.getMessage());
+    }
+
+    @Test
+    void loads_gzipped_saves()
+    throws Exception {
+        Game game = GameSaveLoad.createGameFrom("Once upon a time in the west...", "Dark Forest", foo)
+                .withQuest(List.of(new KillGoal(NpcType.WARRIOR, "goblin", false)));
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(json)) {
+            GameSaveLoad.save(game, gz);
+        }
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(binary)) {
+            GameSaveLoad.saveBinary(game, gz);
+        }
+
+        Game fromJson = GameSaveLoad.load(new ByteArrayInputStream(json.toByteArray()));
+        Game fromBinary = GameSaveLoad.load(new ByteArrayInputStream(binary.toByteArray()));
+
+        assertEquals(game.quest(), fromJson.quest());
+        assertEquals(fromJson, fromBinary);
+    }
+
+    // saves written before they kept the full game state
+    private static String legacySave(Game game)
+    throws Exception {
+        ObjectNode save = (ObjectNode) GameJson.MAPPER.readTree(GameSaveLoad.save(game));
+        save.remove(List.of("events", "combatStatus", "chat", "dialogueTarget"));
+        return save.toString();
+    }
+}
@@ -1,21 +1,36 @@
 package org.meh.dnd;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class InMemoryChannel<T>
         implements Channel<T>
 {
-    private final List<Consumer<T>> consumers = new CopyOnWriteArrayList<>();
+    private final Subscribers<T> subscribers = new Subscribers<>();
 
     @Override
-    public void subscribe(Consumer<T> consumer) {
-        consumers.add(consumer);
+    public Subscription subscribe(BiConsumer<String, T> consumer) {
+        return subscribers.subscribe(consumer);
     }
 
     @Override
-    public void post(T message) {
-        consumers.forEach(c -> c.accept(message));
+    public Subscription subscribe(
+            String gameId,
+            Consumer<T> consumer
+    ) {
+        return subscribers.subscribe(gameId, consumer);
+    }
+
+    @Override
+    public void post(
+            String gameId,
+            T message
+    ) {
+        subscribers.consumers(gameId).forEach(c -> c.accept(message));
+    }
+
+    @Override
+    public int subscribers() {
+        return subscribers.size();
     }
 }
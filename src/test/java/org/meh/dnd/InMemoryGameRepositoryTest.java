@@ -0,0 +1,159 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.meh.dnd.DndCombat.*;
+import static org.meh.dnd.GameMode.EXPLORING;
+
+class InMemoryGameRepositoryTest
+{
+    private final GameRepository gameRepository = new InMemoryGameRepository();
+    private final GameChar foo = new GameChar("Foo", 3,
+            CharClass.FIGHTER,
+            10, 10, 15, 1000, 1500, STATS_FIGHTER, List.of(LONGSWORD),
+            List.of(), new AvailableActions(1, 1, 30),
+            new SpellSlots(4, 3, 0, 0, 0, 0, 0, 0, 0));
+
+    private final Game game = new Game(
+            EXPLORING,
+            List.of(new RestOutput()),
+            foo,
+            new Peace(),
+            new NoChat(),
+            "Once upon a time in the west...",
+            "Dark Forest",
+            new Nobody(),
+            List.of(),
+            List.of()
+    );
+
+    @Test
+    void concurrent_mutators_do_not_lose_updates() {
+        gameRepository.save("game", game);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            IntStream.range(0, 500).forEach(i -> executor.submit(() ->
+                    gameRepository.save("game", g -> g.withStoryLine("event " + i))));
+        }
+
+        assertEquals(500, gameRepository.game("game").orElseThrow().diary().size());
+        long retries = gameRepository.metrics().get("repository.retries");
+        long conflicts = gameRepository.metrics().get("repository.conflicts");
+        assertTrue(retries >= conflicts);
+    }
+
+    @Test
+    void mutating_a_missing_game_does_nothing() {
+        gameRepository.save("missing", g -> g.withPlace("Swamp"));
+
+        assertTrue(gameRepository.game("missing").isEmpty());
+    }
+
+    @Test
+    void idle_games_are_passivated_and_rehydrated_on_access() {
+        Map<String, Game> store = new HashMap<>();
+        InMemoryGameRepository repository = new InMemoryGameRepository(
+                new MapGameStore(store), Duration.ZERO);
+        repository.save("game", game);
+
+        repository.passivateIdle();
+
+        assertEquals(Map.of("game", game), store);
+        assertEquals(0L, repository.metrics().get("repository.games"));
+        assertEquals(1L, repository.metrics().get("repository.passivations"));
+
+        repository.save("game", g -> g.withPlace("Swamp"));
+
+        assertEquals(Optional.of("Swamp"), repository.game("game").map(Game::place));
+        assertEquals(1L, repository.metrics().get("repository.rehydrations"));
+    }
+
+    @Test
+    void games_in_combat_are_passivated_with_their_fight() {
+        Map<String, Game> store = new HashMap<>();
+        InMemoryGameRepository repository = new InMemoryGameRepository(
+                new MapGameStore(store), Duration.ZERO);
+        Game fighting = game.withFightStatus(new Fight(
+                true, foo, List.of(), 5, FightOutcome.IN_PROGRESS,
+                foo.availableActions(), foo.availableActions(), 100, List.of()));
+        repository.save("game", fighting);
+
+        repository.passivateIdle();
+
+        assertEquals(Map.of("game", fighting), store);
+        assertEquals(Optional.of(fighting), repository.game("game"));
+    }
+
+    @Test
+    void rehydrating_a_game_does_not_hold_up_other_games()
+    throws Exception {
+        Map<String, Game> store = new HashMap<>(Map.of("slow", game, "fast", game));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryGameRepository repository = new InMemoryGameRepository(
+                new MapGameStore(store) {
+                    @Override
+                    public Optional<Game> read(String gameId) {
+                        if (gameId.equals("slow")) {
+                            reading.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return super.read(gameId);
+                    }
+                }, Duration.ofHours(1));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<Game>> first = executor.submit(() -> repository.game("slow"));
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            Future<Optional<Game>> second = executor.submit(() -> repository.game("slow"));
+
+            assertEquals(Optional.of(game), repository.game("fast"));
+
+            release.countDown();
+            assertEquals(Optional.of(game), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of(game), second.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2L, repository.metrics().get("repository.rehydrations"));
+    }
+
+    private static class MapGameStore
+            implements GameStore
+    {
+        private final Map<String, Game> games;
+
+        MapGameStore(Map<String, Game> games) {
+            this.games = games;
+        }
+
+        @Override
+        public void write(
+                String gameId,
+                long version,
+                Game game
+        ) {
+            games.put(gameId, game);
+        }
+
+        @Override
+        public Optional<Game> read(String gameId) {
+            return Optional.ofNullable(games.get(gameId));
+        }
+    }
+}
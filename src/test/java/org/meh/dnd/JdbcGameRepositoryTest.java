@@ -0,0 +1,126 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.meh.dnd.DndCombat.*;
+
+class JdbcGameRepositoryTest
+{
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    private final JdbcGameRepository repository = new JdbcGameRepository(url, 2, 16);
+    private final Game game = GameSaveLoad.createGameFrom(
+            "Once upon a time in the west...", "Dark Forest",
+            new GameChar("Foo", 3, CharClass.FIGHTER,
+                    10, 10, 15, 1000, 1500, STATS_FIGHTER,
+                    List.of(LONGSWORD), List.of(),
+                    STANDARD_ACTIONS,
+                    new SpellSlots(0, 0, 0, 0, 0, 0, 0, 0, 0)));
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void flushed_games_survive_a_new_repository() {
+        Game talking = game
+                .withMode(GameMode.DIALOGUE)
+                .withChat(new ChatWith("goblin", List.of(
+                        new ChatMessage(ChatRole.DM, "goblin", "hey there"))))
+                .withDialogueTarget(new Somebody("goblin", NpcType.WARRIOR));
+        repository.save("game", talking);
+
+        repository.flush();
+
+        JdbcGameRepository reopened = new JdbcGameRepository(url, 1, 16);
+        assertEquals(Optional.of(talking), reopened.game("game"));
+        assertEquals(1L, repository.metrics().get("jdbc.rows"));
+    }
+
+    @Test
+    void writes_indexed_columns()
+    throws Exception {
+        repository.save("a", game);
+        repository.save("b", game.withMode(GameMode.COMBAT).withPlace("Swamp"));
+
+        repository.flush();
+
+        try (Connection c = DriverManager.getConnection(url);
+             ResultSet rs = c.createStatement().executeQuery(
+                     "SELECT id, player_name, place FROM games WHERE mode = 'COMBAT'")) {
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertEquals("Foo", rs.getString(2));
+            assertEquals("Swamp", rs.getString(3));
+        }
+        assertEquals(2L, repository.metrics().get("jdbc.batch.max"));
+    }
+
+    @Test
+    void mutators_see_flushed_and_pending_saves()
+    throws Exception {
+        repository.save("game", game.withPlayerChar(game.playerChar().withXp(0)));
+        repository.flush();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++)
+            executor.submit(() -> repository.save("game", g ->
+                    g.withPlayerChar(g.playerChar().withXp(g.playerChar().xp() + 1))));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        repository.flush();
+
+        assertEquals(100, new JdbcGameRepository(url, 1, 16).game("game")
+                .orElseThrow().playerChar().xp());
+    }
+
+    @Test
+    void flushed_and_read_games_are_served_decoded() {
+        repository.save("game", game);
+        repository.flush();
+
+        repository.game("game");
+        repository.save("game", g -> g.withPlace("Swamp"));
+        repository.flush();
+        JdbcGameRepository reopened = new JdbcGameRepository(url, 1, 16);
+        reopened.game("game");
+
+        assertEquals(Optional.of("Swamp"), repository.game("game").map(Game::place));
+        assertEquals(Optional.of("Swamp"), reopened.game("game").map(Game::place));
+        assertEquals(0L, repository.metrics().get("jdbc.reads"));
+        assertEquals(1L, reopened.metrics().get("jdbc.reads"));
+    }
+
+    @Test
+    void a_failed_flush_keeps_the_batch_pending() {
+        repository.save("game", game.withPlayerChar(null));
+
+        repository.flush();
+
+        assertEquals(1L, repository.metrics().get("jdbc.pending"));
+        repository.save("game", game);
+        repository.flush();
+        assertEquals(0L, repository.metrics().get("jdbc.pending"));
+        assertEquals(Optional.of(game), new JdbcGameRepository(url, 1, 16).game("game"));
+    }
+
+    @Test
+    void mutating_a_missing_game_does_nothing() {
+        repository.save("missing", g -> g.withPlace("Swamp"));
+
+        assertEquals(Optional.empty(), repository.game("missing"));
+    }
+}
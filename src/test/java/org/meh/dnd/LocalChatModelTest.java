@@ -0,0 +1,65 @@
+package org.meh.dnd;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.service.output.ServiceOutputParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.meh.dnd.AiEntities.*;
+
+class LocalChatModelTest
+{
+    private final ServiceOutputParser parser = new ServiceOutputParser();
+    private final LocalChatModel model = new LocalChatModel(
+            7, new LocalChatModel.Fixed(0), 0, 0);
+
+    private List<ChatMessage> prompt(Class<?> type) {
+        return List.of(
+                new SystemMessage("You are a Dungeons and Dragons master."),
+                new UserMessage(AiDM.Assistant.EXPLORE + "\n" + parser.outputFormatInstructions(type)));
+    }
+
+    @Test
+    void answers_with_the_structure_asked_for()
+    throws Exception {
+        ObjectMapper strict = GameJson.MAPPER.copy()
+                .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        for (Class<?> type : List.of(QuestStartModel.class, ParsedExploreResponse.class, ParsedDialogueResponse.class)) {
+            String answer = model.generate(prompt(type)).content().text();
+
+            assertInstanceOf(type, strict.readValue(answer, type));
+        }
+    }
+
+    @Test
+    void same_conversation_gets_the_same_answer() {
+        LocalChatModel other = new LocalChatModel(7, new LocalChatModel.Fixed(0), 0, 0);
+
+        assertEquals(
+                model.generate(prompt(ParsedExploreResponse.class)).content(),
+                other.generate(prompt(ParsedExploreResponse.class)).content());
+    }
+
+    @Test
+    void fails_at_the_error_rate() {
+        LocalChatModel failing = new LocalChatModel(7, new LocalChatModel.Fixed(0), 1, 0);
+
+        assertThrows(IllegalStateException.class,
+                () -> failing.generate(prompt(ParsedExploreResponse.class)));
+    }
+
+    @Test
+    void parses_latency_profiles() {
+        assertEquals(
+                new LocalChatModel.Spikes(0.5, 1000, new LocalChatModel.LogNormal(800, 0.5)),
+                LocalChatModel.LatencyProfile.parse("spikes:0.5:1000:lognormal:800:0.5"));
+        assertEquals(200, LocalChatModel.LatencyProfile.parse("fixed:200").draw(new Random()));
+    }
+}
@@ -0,0 +1,56 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PersistentVectorTest
+{
+    @Test
+    void appends_like_a_list() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            vector = vector.plus(i);
+            expected.add(i);
+        }
+
+        assertEquals(expected, vector);
+        assertEquals(expected.hashCode(), vector.hashCode());
+    }
+
+    @Test
+    void earlier_versions_are_unchanged() {
+        PersistentVector<String> before = PersistentVector.from(List.of("a", "b"));
+
+        PersistentVector<String> after = before.plus("c").with(0, "z");
+
+        assertEquals(List.of("a", "b"), before);
+        assertEquals(List.of("z", "b", "c"), after);
+    }
+
+    @Test
+    void replaces_elements_inside_the_trie() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 2_000; i++)
+            vector = vector.plus(i);
+
+        PersistentVector<Integer> updated = vector.with(1_000, -1).with(1_999, -2);
+
+        assertEquals(-1, updated.get(1_000));
+        assertEquals(-2, updated.get(1_999));
+        assertEquals(999, updated.get(999));
+        assertEquals(1_000, vector.get(1_000));
+    }
+
+    @Test
+    void wraps_vectors_without_copying() {
+        PersistentVector<String> vector = PersistentVector.from(List.of("a"));
+
+        assertSame(vector, PersistentVector.from(vector));
+    }
+}
@@ -0,0 +1,46 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrefetcherTest
+{
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Prefetcher prefetcher = new Prefetcher(Runnable::run, 1, 2, 16);
+
+    private Prefetcher.Speculation speculation(String key) {
+        return new Prefetcher.Speculation(key, () -> {
+            calls.incrementAndGet();
+            return key.toUpperCase();
+        });
+    }
+
+    @Test
+    void takes_speculated_responses_within_budget() {
+        prefetcher.speculate("game", List.of(
+                speculation("forest"), speculation("swamp"), speculation("cave")));
+
+        assertEquals(2, calls.get());
+        assertEquals(Optional.of("SWAMP"), prefetcher.take("game", "swamp"));
+    }
+
+    @Test
+    void taking_or_speculating_again_discards_the_round() {
+        prefetcher.speculate("game", List.of(speculation("forest"), speculation("swamp")));
+        prefetcher.speculate("game", List.of(speculation("cave")));
+
+        assertEquals(Optional.empty(), prefetcher.take("game", "forest"));
+
+        prefetcher.speculate("game", List.of(speculation("cave")));
+        prefetcher.take("game", "cave");
+
+        assertEquals(Optional.empty(), prefetcher.take("game", "cave"));
+        assertEquals(1L, prefetcher.metrics().get("prefetch.hits"));
+        assertEquals(2L, prefetcher.metrics().get("prefetch.misses"));
+    }
+}
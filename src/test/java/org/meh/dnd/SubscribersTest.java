@@ -0,0 +1,49 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SubscribersTest
+{
+    private final Channel<String> channel = new InMemoryChannel<>();
+    private final List<String> first = new ArrayList<>();
+    private final List<String> second = new ArrayList<>();
+    private final List<String> all = new ArrayList<>();
+
+    @Test
+    void messages_are_routed_by_game() {
+        channel.subscribe("first", first::add);
+        channel.subscribe("second", second::add);
+        channel.subscribe((gameId, m) -> all.add(gameId + ":" + m));
+
+        channel.post("first", "a");
+        channel.post("second", "b");
+        channel.post("third", "c");
+
+        assertThat(first, contains("a"));
+        assertThat(second, contains("b"));
+        assertThat(all, contains("first:a", "second:b", "third:c"));
+    }
+
+    @Test
+    void cancelled_subscriptions_stop_receiving() {
+        Subscription one = channel.subscribe("first", first::add);
+        Subscription two = channel.subscribe((gameId, m) -> all.add(m));
+        channel.post("first", "a");
+
+        one.cancel();
+        two.cancel();
+        two.cancel();
+        channel.post("first", "b");
+
+        assertThat(first, contains("a"));
+        assertThat(all, contains("a"));
+        assertEquals(0, channel.subscribers());
+    }
+}
@@ -0,0 +1,157 @@
+package org.meh.dnd;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindGameStoreTest
+{
+    private final Game game = GameSaveLoad.createGameFrom(
+            "Once upon a time in the west...", "Dark Forest",
+            new GameChar("Foo", 3, CharClass.FIGHTER,
+                    10, 10, 15, 1000, 1500, DndCombat.STATS_FIGHTER,
+                    List.of(DndCombat.LONGSWORD), List.of(),
+                    DndCombat.STANDARD_ACTIONS,
+                    new SpellSlots(0, 0, 0, 0, 0, 0, 0, 0, 0)));
+    private final RecordingStore delegate = new RecordingStore(new ArrayList<>());
+
+    @Test
+    void commits_only_the_latest_version_of_each_game() {
+        WriteBehindGameStore store = new WriteBehindGameStore(delegate, Duration.ZERO);
+        Game swamp = game.withPlace("Swamp");
+
+        store.changed("a", 1, game);
+        store.changed("a", 3, swamp);
+        store.changed("a", 2, game.withPlace("Mountains"));
+        store.changed("b", 4, game);
+        assertEquals(List.of(), delegate.calls());
+
+        store.commit();
+
+        assertEquals(3, delegate.calls().size());
+        assertTrue(delegate.calls().contains("changed a 3"));
+        assertTrue(delegate.calls().contains("changed b 4"));
+        assertEquals("sync", delegate.calls().getLast());
+        assertEquals(1L, store.metrics().get("writebehind.fsyncs"));
+        assertEquals(2L, store.metrics().get("writebehind.coalesced"));
+    }
+
+    @Test
+    void pending_changes_are_readable_before_commit()
+    throws Exception {
+        WriteBehindGameStore store = new WriteBehindGameStore(delegate, Duration.ZERO);
+
+        store.changed("a", 1, game);
+
+        assertEquals(Optional.of(game), store.read("a"));
+    }
+
+    @Test
+    void stale_passivation_does_not_override_pending_change()
+    throws Exception {
+        WriteBehindGameStore store = new WriteBehindGameStore(delegate, Duration.ZERO);
+
+        store.changed("a", 2, game.withPlace("Swamp"));
+        store.write("a", 1, game);
+        store.commit();
+
+        assertEquals(List.of("changed a 2", "sync"), delegate.calls());
+    }
+
+    @Test
+    void syncs_at_most_once_per_interval()
+    throws Exception {
+        WriteBehindGameStore store = new WriteBehindGameStore(delegate, Duration.ofHours(1));
+
+        store.changed("a", 1, game);
+        store.commit();
+        store.changed("a", 2, game);
+        store.commit();
+        Thread.sleep(5);
+
+        assertEquals(List.of("changed a 1", "changed a 2"), delegate.calls());
+        assertTrue(store.metrics().get("durability.lag.micros") > 0);
+
+        store.flush();
+
+        assertEquals("sync", delegate.calls().getLast());
+        assertEquals(0L, store.metrics().get("durability.lag.micros"));
+    }
+
+    @Test
+    void a_change_that_fails_to_write_is_retried_on_the_next_commit() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        WriteBehindGameStore store = new WriteBehindGameStore(new RecordingStore(delegate.calls()) {
+            @Override
+            public void changed(
+                    String gameId,
+                    long version,
+                    Game game
+            ) throws IOException {
+                if (failing.getAndSet(false))
+                    throw new IOException("disk full");
+                super.changed(gameId, version, game);
+            }
+        }, Duration.ZERO);
+
+        store.changed("a", 1, game);
+        store.commit();
+
+        assertEquals(List.of(), delegate.calls());
+        assertEquals(1L, store.metrics().get("writebehind.pending"));
+
+        store.commit();
+
+        assertEquals(List.of("changed a 1", "sync"), delegate.calls());
+    }
+
+    private static class RecordingStore
+            implements GameStore
+    {
+        private final List<String> calls;
+
+        RecordingStore(List<String> calls) {
+            this.calls = calls;
+        }
+
+        List<String> calls() {
+            return calls;
+        }
+
+        @Override
+        public void write(
+                String gameId,
+                long version,
+                Game game
+        ) {
+            calls.add("write " + gameId + " " + version);
+        }
+
+        @Override
+        public Optional<Game> read(String gameId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void changed(
+                String gameId,
+                long version,
+                Game game
+        ) throws IOException {
+            calls.add("changed " + gameId + " " + version);
+        }
+
+        @Override
+        public void sync() {
+            calls.add("sync");
+        }
+    }
+}